@@ -1,14 +1,18 @@
 package ch.admin.bit.jeap.messagecontract.domain;
 
+import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckProperties;
+import ch.admin.bit.jeap.messagecontract.domain.schema.MessageSchemaLoadingProperties;
 import io.micrometer.core.aop.TimedAspect;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 
 @AutoConfiguration
 @ComponentScan
+@EnableConfigurationProperties({MessageSchemaLoadingProperties.class, CompatibilityCheckProperties.class})
 public class DomainConfiguration {
 
     @ConditionalOnBean(MeterRegistry.class)
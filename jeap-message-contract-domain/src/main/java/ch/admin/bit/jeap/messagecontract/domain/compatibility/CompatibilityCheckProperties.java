@@ -0,0 +1,42 @@
+package ch.admin.bit.jeap.messagecontract.domain.compatibility;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "jeap.messagecontract.compatibility")
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompatibilityCheckProperties {
+
+    /**
+     * Keep parsed Avro schemas in memory (see {@link ParsedSchemaCache}) instead of parsing the protocol of both sides
+     * for every compared pair of contracts.
+     */
+    private boolean schemaCacheEnabled = true;
+
+    /**
+     * Upper bound for the summed UTF-8 encoded size (in bytes) of the Avro protocols whose parsed schemas are cached.
+     * Entries are evicted in approximate least-recently-used order once the bound is exceeded.
+     */
+    private long schemaCacheMaximumSizeBytes = 32L * 1024 * 1024;
+
+    /**
+     * Memoise the incompatibilities found for a pair of reader and writer schemas (see
+     * {@link CompatibilityResultCache}).
+     */
+    private boolean resultCacheEnabled = true;
+
+    /**
+     * Maximum number of memoised reader/writer schema pairs.
+     */
+    private long resultCacheMaximumSize = 10_000;
+
+    /**
+     * Maximum number of contract/counterpart schema pairs that are compared concurrently, shared by all compatibility
+     * checks. A value of 1 compares the pairs of a check one after another on the request thread.
+     */
+    private int validationParallelism = Runtime.getRuntime().availableProcessors();
+}
@@ -0,0 +1,7 @@
+package ch.admin.bit.jeap.messagecontract.domain.compatibility;
+
+/**
+ * An app version whose compatibility with the consumers/producers currently deployed on {@code environment} is checked.
+ */
+public record CompatibilityCheckTarget(String appName, String appVersion, String environment) {
+}
@@ -0,0 +1,51 @@
+package ch.admin.bit.jeap.messagecontract.domain.compatibility;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Memoises the result of comparing a reader with a writer schema, keyed by the {@link SchemaFingerprint}s of both.
+ * <p>
+ * The incompatibilities between two schemas depend on nothing but the schemas themselves, so a result can be reused
+ * by every later check of the same pair - across compatibility checks of deploy pipelines and Renovate runs alike.
+ * The cache is bounded by {@link CompatibilityCheckProperties#getResultCacheMaximumSize()} and publishes its hit, miss
+ * and eviction statistics as {@code cache.*} meters tagged {@code cache=compatibilityresultcache}.
+ */
+@Component
+public class CompatibilityResultCache {
+
+    static final String CACHE_NAME = "compatibilityresultcache";
+
+    private final boolean enabled;
+    private final Cache<SchemaPair, List<SchemaIncompatibility>> cache;
+
+    public CompatibilityResultCache(CompatibilityCheckProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isResultCacheEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getResultCacheMaximumSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the memoised incompatibilities of {@code reader} and {@code writer}, computing them with
+     * {@code validation} on a miss.
+     */
+    List<SchemaIncompatibility> get(SchemaFingerprint reader, SchemaFingerprint writer,
+                                    Supplier<List<SchemaIncompatibility>> validation) {
+        if (!enabled) {
+            return validation.get();
+        }
+        return cache.get(new SchemaPair(reader, writer), _ -> List.copyOf(validation.get()));
+    }
+
+    private record SchemaPair(SchemaFingerprint reader, SchemaFingerprint writer) {
+    }
+}
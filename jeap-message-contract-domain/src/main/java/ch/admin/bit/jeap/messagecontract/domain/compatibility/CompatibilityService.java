@@ -3,26 +3,53 @@ package ch.admin.bit.jeap.messagecontract.domain.compatibility;
 import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckResult.ConsumerProducerInteraction;
 import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckResult.Incompatibility;
 import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckResult.InteractionRole;
-import ch.admin.bit.jeap.messagecontract.persistence.DeploymentRepository;
 import ch.admin.bit.jeap.messagecontract.persistence.MessageContractRepository;
 import ch.admin.bit.jeap.messagecontract.persistence.model.MessageContract;
+import ch.admin.bit.jeap.messagecontract.persistence.model.MessageContractRole;
 import io.micrometer.core.annotation.Timed;
-import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 @Component
-@RequiredArgsConstructor
 public class CompatibilityService {
 
+    private static final Comparator<MessageContract> CONTRACT_ORDER = Comparator
+            .comparing(MessageContract::getMessageType)
+            .thenComparing(MessageContract::getTopic)
+            .thenComparing(MessageContract::getRole)
+            .thenComparing(MessageContract::getMessageTypeVersion);
+
+    private static final Comparator<MessageContract> COUNTERPART_ORDER = Comparator
+            .comparing(MessageContract::getAppName)
+            .thenComparing(MessageContract::getMessageTypeVersion);
+
     private final MessageContractRepository messageContractRepository;
     private final SchemaCompatibilityService schemaCompatibilityService;
-    private final DeploymentRepository deploymentRepository;
+    private final int validationParallelism;
+    private final Semaphore validationPermits;
+
+    public CompatibilityService(MessageContractRepository messageContractRepository,
+                                SchemaCompatibilityService schemaCompatibilityService,
+                                CompatibilityCheckProperties properties) {
+        this.messageContractRepository = messageContractRepository;
+        this.schemaCompatibilityService = schemaCompatibilityService;
+        this.validationParallelism = Math.max(1, properties.getValidationParallelism());
+        this.validationPermits = new Semaphore(validationParallelism, true);
+    }
 
     /**
      * For each consumer/producer counterpart of all contracts of the given app version, checks if the schema is compatible
@@ -30,68 +57,239 @@ public class CompatibilityService {
      * the contracts of the version currently deployed on the given environment are used. Defaults to compatibility,
      * i.e. if no contracts are found or if no known counterparts are deployed on the environment, no incompatibilities
      * are assumed.
+     * <p>
+     * The deployed counterpart contracts of all contracts are loaded with a single query up front. The schemas of the
+     * resulting pairs are then compared concurrently, up to
+     * {@link CompatibilityCheckProperties#getValidationParallelism()} at a time. Interactions and incompatibilities are
+     * reported in the order of the contracts and their counterparts.
      */
     @Transactional(readOnly = true)
     @Timed(value = "checkcompatibility.time", description = "Time taken for the compatibility check", histogram = true)
     public CompatibilityCheckResult checkCompatibility(String appName, String appVersion, String environment) {
         List<MessageContract> contracts = messageContractRepository.getContractsForAppVersion(appName, appVersion);
-        return checkCompatibilityForContracts(environment, contracts);
+        if (contracts.isEmpty()) {
+            return new CompatibilityCheckResult(List.of(), List.of());
+        }
+        List<MessageContract> counterpartContracts =
+                messageContractRepository.findCurrentlyDeployedCounterpartContracts(appName, appVersion, environment);
+        return checkCompatibilityForContracts(contracts, groupByInteraction(counterpartContracts));
     }
 
-    private CompatibilityCheckResult checkCompatibilityForContracts(String environment, List<MessageContract> contracts) {
-        List<ConsumerProducerInteraction> interactions = new ArrayList<>();
-        List<Incompatibility> incompatibilities = new ArrayList<>();
-        for (MessageContract contract : contracts) {
-            checkCompatibilityForContract(environment, interactions, incompatibilities, contract);
+    /**
+     * Checks the compatibility of each of the given app versions with the environment it targets, as
+     * {@link #checkCompatibility(String, String, String)} does, and returns the results in the order of the targets.
+     * <p>
+     * The contracts of every app version and the currently deployed contracts of every environment are loaded once for
+     * the whole batch, and the schema pairs of all targets are compared in one concurrent pass, sharing the parsed
+     * schemas and memoised results.
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = "checkcompatibility.batch.time", description = "Time taken for a batch of compatibility checks", histogram = true)
+    public List<CompatibilityCheckResult> checkCompatibility(List<CompatibilityCheckTarget> targets) {
+        Map<String, Map<String, List<MessageContract>>> contractsByAppVersion = new HashMap<>();
+        Map<String, Set<String>> messageTypesByEnvironment = new HashMap<>();
+        for (CompatibilityCheckTarget target : targets) {
+            List<MessageContract> contracts = contractsByAppVersion
+                    .computeIfAbsent(target.appName(), _ -> new HashMap<>())
+                    .computeIfAbsent(target.appVersion(), appVersion ->
+                            messageContractRepository.getContractsForAppVersion(target.appName(), appVersion));
+            Set<String> messageTypes = messageTypesByEnvironment.computeIfAbsent(target.environment(), _ -> new HashSet<>());
+            contracts.forEach(contract -> messageTypes.add(contract.getMessageType()));
         }
 
-        return new CompatibilityCheckResult(interactions, incompatibilities);
+        Map<String, Map<InteractionKey, List<MessageContract>>> deployedContractsByEnvironment = new HashMap<>();
+        messageTypesByEnvironment.forEach((environment, messageTypes) -> deployedContractsByEnvironment.put(environment,
+                messageTypes.isEmpty() ? Map.of() : groupByInteraction(messageContractRepository
+                        .findCurrentlyDeployedContractsForMessageTypes(environment, messageTypes))));
+
+        return checkCompatibilityForTargets(targets.stream()
+                .map(target -> createComparisons(
+                        contractsByAppVersion.get(target.appName()).get(target.appVersion()),
+                        deployedContractsByEnvironment.get(target.environment())))
+                .toList());
     }
 
-    private void checkCompatibilityForContract(String environment,
-                                               List<ConsumerProducerInteraction> interactions,
-                                               List<Incompatibility> incompatibilities,
-                                               MessageContract contract) {
-        // Per contract, get the target counterparts (consumer->producers, producer->consumers)
-        Set<String> appsInteractedWith = getAppNamesInteractedWith(contract);
+    /**
+     * Simulates deploying the given versions of several apps on {@code environment} at the same time: each planned
+     * app version is checked against the environment as it would be after the rollout, i.e. against the planned
+     * versions of the other apps and the currently deployed versions of all remaining apps. Apps whose planned version
+     * has no contracts no longer take part in any interaction.
+     * <p>
+     * The contracts of the planned app versions and the deployed contracts of the environment are loaded once for the
+     * whole simulation.
+     *
+     * @param plannedVersions the app version to be deployed, by app name
+     * @return the result of each planned app version, ordered by app name
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = "checkcompatibility.simulation.time", description = "Time taken to simulate simultaneous deployments", histogram = true)
+    public Map<CompatibilityCheckTarget, CompatibilityCheckResult> simulateDeployments(String environment,
+                                                                                       Map<String, String> plannedVersions) {
+        List<CompatibilityCheckTarget> targets = plannedVersions.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(plannedVersion -> new CompatibilityCheckTarget(plannedVersion.getKey(), plannedVersion.getValue(), environment))
+                .toList();
+        Map<String, List<MessageContract>> plannedContractsByApp = new HashMap<>();
+        Set<String> messageTypes = new HashSet<>();
+        for (CompatibilityCheckTarget target : targets) {
+            List<MessageContract> contracts = messageContractRepository.getContractsForAppVersion(target.appName(), target.appVersion());
+            plannedContractsByApp.put(target.appName(), contracts);
+            contracts.forEach(contract -> messageTypes.add(contract.getMessageType()));
+        }
 
-        for (String appInteractedWith : appsInteractedWith) {
-            Optional<String> deployedAppVersionOptional = deploymentRepository.findAppVersionCurrentlyDeployedOnEnvironment(appInteractedWith, environment);
-            deployedAppVersionOptional.ifPresent(deployedVersion ->
-                    checkCompatibilityWithApp(interactions, incompatibilities, contract, appInteractedWith, deployedVersion));
+        // Overlay the planned versions on the environment: deployed contracts of planned apps are replaced
+        List<MessageContract> simulatedContracts = new ArrayList<>();
+        if (!messageTypes.isEmpty()) {
+            messageContractRepository.findCurrentlyDeployedContractsForMessageTypes(environment, messageTypes).stream()
+                    .filter(contract -> !plannedVersions.containsKey(contract.getAppName()))
+                    .forEach(simulatedContracts::add);
         }
+        plannedContractsByApp.values().forEach(simulatedContracts::addAll);
+        simulatedContracts.sort(COUNTERPART_ORDER);
+        Map<InteractionKey, List<MessageContract>> simulatedContractsByInteraction = groupByInteraction(simulatedContracts);
+
+        List<CompatibilityCheckResult> results = checkCompatibilityForTargets(targets.stream()
+                .map(target -> createComparisons(plannedContractsByApp.get(target.appName()), simulatedContractsByInteraction))
+                .toList());
+        Map<CompatibilityCheckTarget, CompatibilityCheckResult> resultsByTarget = new LinkedHashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            resultsByTarget.put(targets.get(i), results.get(i));
+        }
+        return resultsByTarget;
     }
 
-    private void checkCompatibilityWithApp(List<ConsumerProducerInteraction> interactions, List<Incompatibility> incompatibilities, MessageContract contract, String appInteractedWith, String deployedVersion) {
-        List<MessageContract> interactedWithContracts = messageContractRepository
-                .getContractsForAppVersionAndMessageTypeOnTopicWithRole(appInteractedWith, deployedVersion,
-                        contract.getMessageType(), contract.getTopic(), contract.getRole().opposite());
+    /**
+     * Validates the comparisons of all targets in one pass and returns the result of each target, in order.
+     */
+    private List<CompatibilityCheckResult> checkCompatibilityForTargets(List<List<Comparison>> comparisonsByTarget) {
+        List<List<SchemaIncompatibility>> schemaIncompatibilities = validateCompatibility(comparisonsByTarget.stream()
+                .flatMap(List::stream)
+                .toList());
 
-        // If any matches are found, validate compatibility
-        for (MessageContract interactedWithContract : interactedWithContracts) {
-            ConsumerProducerInteraction interaction = createInteraction(appInteractedWith, deployedVersion, interactedWithContract);
-            interactions.add(interaction);
-            validateCompatibility(incompatibilities, contract, interactedWithContract, interaction);
+        List<CompatibilityCheckResult> results = new ArrayList<>(comparisonsByTarget.size());
+        int offset = 0;
+        for (List<Comparison> comparisons : comparisonsByTarget) {
+            results.add(createResult(comparisons, schemaIncompatibilities.subList(offset, offset + comparisons.size())));
+            offset += comparisons.size();
         }
+        return results;
     }
 
-    private void validateCompatibility(List<Incompatibility> incompatibilities, MessageContract appContract,
-                                       MessageContract interactedWithContract, ConsumerProducerInteraction interaction) {
-        List<SchemaIncompatibility> schemaIncompatibilities =
-                schemaCompatibilityService.validateCompatibility(appContract, interactedWithContract);
-        if (!schemaIncompatibilities.isEmpty()) {
-            incompatibilities.add(new Incompatibility(ConsumerProducerInteraction.from(appContract), interaction, schemaIncompatibilities));
+    private CompatibilityCheckResult checkCompatibilityForContracts(List<MessageContract> contracts,
+                                                                    Map<InteractionKey, List<MessageContract>> counterpartContracts) {
+        List<Comparison> comparisons = createComparisons(contracts, counterpartContracts);
+        return createResult(comparisons, validateCompatibility(comparisons));
+    }
+
+    private static List<Comparison> createComparisons(List<MessageContract> contracts,
+                                                      Map<InteractionKey, List<MessageContract>> counterpartContracts) {
+        List<Comparison> comparisons = new ArrayList<>();
+        for (MessageContract contract : contracts.stream().sorted(CONTRACT_ORDER).toList()) {
+            // Per contract, get the deployed counterparts (consumer->producers, producer->consumers)
+            List<MessageContract> interactedWithContracts =
+                    counterpartContracts.getOrDefault(InteractionKey.counterpartOf(contract), List.of());
+            for (MessageContract interactedWithContract : interactedWithContracts) {
+                comparisons.add(new Comparison(contract, interactedWithContract, createInteraction(interactedWithContract)));
+            }
         }
+        return comparisons;
     }
 
-    private Set<String> getAppNamesInteractedWith(MessageContract contract) {
-        return messageContractRepository.distinctAppNameByRoleForMessageTypeOnTopic(
-                contract.getMessageType(), contract.getTopic(), contract.getRole().opposite());
+    /**
+     * Builds the result of {@code comparisons}, given the schema incompatibilities found for each of them in the same
+     * order. Results are collected in the order of the comparisons, regardless of the order in which they complete.
+     */
+    private static CompatibilityCheckResult createResult(List<Comparison> comparisons,
+                                                         List<List<SchemaIncompatibility>> schemaIncompatibilities) {
+        List<ConsumerProducerInteraction> interactions = new ArrayList<>();
+        List<Incompatibility> incompatibilities = new ArrayList<>();
+        for (int i = 0; i < comparisons.size(); i++) {
+            Comparison comparison = comparisons.get(i);
+            interactions.add(comparison.interaction());
+            if (!schemaIncompatibilities.get(i).isEmpty()) {
+                incompatibilities.add(new Incompatibility(ConsumerProducerInteraction.from(comparison.contract()),
+                        comparison.interaction(), schemaIncompatibilities.get(i)));
+            }
+        }
+        return new CompatibilityCheckResult(interactions, incompatibilities);
+    }
+
+    private List<List<SchemaIncompatibility>> validateCompatibility(List<Comparison> comparisons) {
+        if (comparisons.size() <= 1 || validationParallelism <= 1) {
+            return comparisons.stream()
+                    .map(this::validateCompatibility)
+                    .toList();
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<SchemaIncompatibility>>> validations = comparisons.stream()
+                    .map(comparison -> executor.submit(() -> validateCompatibilityWithPermit(comparison)))
+                    .toList();
+            List<List<SchemaIncompatibility>> results = new ArrayList<>(validations.size());
+            for (Future<List<SchemaIncompatibility>> validation : validations) {
+                results.add(awaitValidation(validation, validations));
+            }
+            return results;
+        }
+    }
+
+    private List<SchemaIncompatibility> validateCompatibilityWithPermit(Comparison comparison) throws InterruptedException {
+        validationPermits.acquire();
+        try {
+            return validateCompatibility(comparison);
+        } finally {
+            validationPermits.release();
+        }
+    }
+
+    private List<SchemaIncompatibility> validateCompatibility(Comparison comparison) {
+        return schemaCompatibilityService.validateCompatibility(comparison.contract(), comparison.interactedWithContract());
+    }
+
+    private static List<SchemaIncompatibility> awaitValidation(Future<List<SchemaIncompatibility>> validation,
+                                                               List<Future<List<SchemaIncompatibility>>> allValidations) {
+        try {
+            return validation.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            allValidations.forEach(otherValidation -> otherValidation.cancel(true));
+            throw new IllegalStateException("Interrupted while validating schema compatibility", ex);
+        } catch (ExecutionException ex) {
+            allValidations.forEach(otherValidation -> otherValidation.cancel(true));
+            // Validation only throws unchecked exceptions - rethrow them as they are
+            switch (ex.getCause()) {
+                case RuntimeException runtimeException -> throw runtimeException;
+                case Error error -> throw error;
+                default -> throw new IllegalStateException(ex.getCause());
+            }
+        }
     }
 
-    private static ConsumerProducerInteraction createInteraction(String appInteractedWith, String deployedVersion, MessageContract interactedWithContract) {
-        return new ConsumerProducerInteraction(appInteractedWith, deployedVersion,
+    private static Map<InteractionKey, List<MessageContract>> groupByInteraction(List<MessageContract> contracts) {
+        Map<InteractionKey, List<MessageContract>> contractsByInteraction = new HashMap<>();
+        for (MessageContract contract : contracts) {
+            contractsByInteraction.computeIfAbsent(InteractionKey.of(contract), _ -> new ArrayList<>()).add(contract);
+        }
+        return contractsByInteraction;
+    }
+
+    private static ConsumerProducerInteraction createInteraction(MessageContract interactedWithContract) {
+        return new ConsumerProducerInteraction(interactedWithContract.getAppName(), interactedWithContract.getAppVersion(),
                 interactedWithContract.getMessageType(), interactedWithContract.getMessageTypeVersion(),
                 interactedWithContract.getTopic(), InteractionRole.from(interactedWithContract.getRole()));
     }
+
+    private record Comparison(MessageContract contract, MessageContract interactedWithContract,
+                              ConsumerProducerInteraction interaction) {
+    }
+
+    private record InteractionKey(String messageType, String topic, MessageContractRole role) {
+
+        static InteractionKey of(MessageContract contract) {
+            return new InteractionKey(contract.getMessageType(), contract.getTopic(), contract.getRole());
+        }
+
+        static InteractionKey counterpartOf(MessageContract contract) {
+            return new InteractionKey(contract.getMessageType(), contract.getTopic(), contract.getRole().opposite());
+        }
+    }
 }
@@ -0,0 +1,48 @@
+package ch.admin.bit.jeap.messagecontract.domain.compatibility;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.apache.avro.Schema;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Function;
+
+/**
+ * Cache of Avro schemas parsed from the protocols of message contracts, keyed by {@link SchemaFingerprint}.
+ * <p>
+ * A compatibility check compares every contract of an app with all deployed counterparts, so the same producer
+ * protocol is typically parsed once per consumer. With this cache each distinct protocol is parsed once. The cache is
+ * bounded by the summed protocol size ({@link CompatibilityCheckProperties#getSchemaCacheMaximumSizeBytes()}) and
+ * publishes its hit, miss and eviction statistics as {@code cache.*} meters tagged {@code cache=parsedschemacache}.
+ */
+@Component
+public class ParsedSchemaCache {
+
+    static final String CACHE_NAME = "parsedschemacache";
+
+    private final boolean enabled;
+    private final Cache<SchemaFingerprint, Schema> cache;
+
+    public ParsedSchemaCache(CompatibilityCheckProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isSchemaCacheEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getSchemaCacheMaximumSizeBytes())
+                .weigher((SchemaFingerprint fingerprint, Schema _) -> fingerprint.protocolSizeBytes())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached schema of {@code schema} with the fingerprint {@code fingerprint}, parsing it with
+     * {@code parser} on a miss. Parse failures are not cached.
+     */
+    Schema get(SchemaFingerprint fingerprint, MessageTypeSchema schema, Function<MessageTypeSchema, Schema> parser) {
+        if (!enabled) {
+            return parser.apply(schema);
+        }
+        return cache.get(fingerprint, _ -> parser.apply(schema));
+    }
+}
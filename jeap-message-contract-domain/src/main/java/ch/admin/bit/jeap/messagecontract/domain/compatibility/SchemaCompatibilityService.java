@@ -2,20 +2,36 @@ package ch.admin.bit.jeap.messagecontract.domain.compatibility;
 
 import ch.admin.bit.jeap.messagecontract.persistence.model.MessageContract;
 import ch.admin.bit.jeap.messagecontract.persistence.model.MessageContractRole;
-import lombok.RequiredArgsConstructor;
 import org.apache.avro.Protocol;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaCompatibility;
 import org.apache.avro.SchemaCompatibility.SchemaCompatibilityResult;
 import org.apache.avro.SchemaCompatibility.SchemaCompatibilityType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 @Component
-@RequiredArgsConstructor
 public class SchemaCompatibilityService {
 
+    private final ParsedSchemaCache parsedSchemaCache;
+    private final CompatibilityResultCache resultCache;
+
+    @Autowired
+    public SchemaCompatibilityService(ParsedSchemaCache parsedSchemaCache, CompatibilityResultCache resultCache) {
+        this.parsedSchemaCache = parsedSchemaCache;
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Parses and compares the schemas of every comparison, without caching.
+     */
+    public SchemaCompatibilityService() {
+        this(null, null);
+    }
+
     public List<SchemaIncompatibility> validateCompatibility(MessageContract contract, MessageContract interactedWithContract) {
         if (contract.getRole() == MessageContractRole.CONSUMER) {
             return validateReaderWriterCompatibility(contract, interactedWithContract);
@@ -30,10 +46,23 @@ public class SchemaCompatibilityService {
                 MessageTypeSchema.fromMessageContract(writerContract));
     }
 
+    /**
+     * Compares {@code readerSchema} with {@code writerSchema}. If caches are wired, the result is memoised per pair of
+     * schema fingerprints and each schema is parsed at most once.
+     */
     List<SchemaIncompatibility> validateCompatibility(MessageTypeSchema readerSchema, MessageTypeSchema writerSchema) {
-        Schema readerAvroSchema = getAvroSchema(readerSchema);
-        Schema writerAvroSchema = getAvroSchema(writerSchema);
+        if (parsedSchemaCache == null && resultCache == null) {
+            return compare(parseAvroSchema(readerSchema), parseAvroSchema(writerSchema));
+        }
+        SchemaFingerprint readerFingerprint = SchemaFingerprint.of(readerSchema);
+        SchemaFingerprint writerFingerprint = SchemaFingerprint.of(writerSchema);
+        Supplier<List<SchemaIncompatibility>> comparison = () -> compare(
+                getAvroSchema(readerFingerprint, readerSchema),
+                getAvroSchema(writerFingerprint, writerSchema));
+        return resultCache == null ? comparison.get() : resultCache.get(readerFingerprint, writerFingerprint, comparison);
+    }
 
+    private List<SchemaIncompatibility> compare(Schema readerAvroSchema, Schema writerAvroSchema) {
         SchemaCompatibilityResult result = SchemaCompatibility.checkReaderWriterCompatibility(
                 readerAvroSchema, writerAvroSchema).getResult();
 
@@ -54,7 +83,14 @@ public class SchemaCompatibilityService {
                 incompatibility.getLocation());
     }
 
-    private Schema getAvroSchema(MessageTypeSchema schema) {
+    private Schema getAvroSchema(SchemaFingerprint fingerprint, MessageTypeSchema schema) {
+        if (parsedSchemaCache == null) {
+            return parseAvroSchema(schema);
+        }
+        return parsedSchemaCache.get(fingerprint, schema, SchemaCompatibilityService::parseAvroSchema);
+    }
+
+    private static Schema parseAvroSchema(MessageTypeSchema schema) {
         Protocol readerProtocol = Protocol.parse(schema.avroProtocol());
         return readerProtocol.getType(schema.messageTypeName());
     }
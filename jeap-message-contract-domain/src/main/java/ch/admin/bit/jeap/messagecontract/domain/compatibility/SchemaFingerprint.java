@@ -0,0 +1,29 @@
+package ch.admin.bit.jeap.messagecontract.domain.compatibility;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Identifies the schema of a message type by the SHA-256 hash of the Avro protocol it is read from and the message
+ * type name. Two {@link MessageTypeSchema}s with the same fingerprint parse to the same Avro schema.
+ *
+ * @param protocolSizeBytes UTF-8 encoded size of the hashed protocol, used to weigh cache entries
+ */
+record SchemaFingerprint(String protocolHash, String messageTypeName, int protocolSizeBytes) {
+
+    static SchemaFingerprint of(MessageTypeSchema schema) {
+        byte[] protocol = schema.avroProtocol().getBytes(StandardCharsets.UTF_8);
+        return new SchemaFingerprint(sha256(protocol), schema.messageTypeName(), protocol.length);
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package ch.admin.bit.jeap.messagecontract.domain.renovate;
 import ch.admin.bit.jeap.messagecontract.domain.compatibility.SchemaCompatibilityService;
 import ch.admin.bit.jeap.messagecontract.domain.schema.MessageSchemaService;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepository;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryBusyException;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryFactory;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepoException;
 import ch.admin.bit.jeap.messagecontract.persistence.MessageContractRepository;
@@ -141,6 +142,9 @@ public class RenovateCompatibilityService {
             }
             log.info("Rejecting Renovate candidate version={} reason=schema-or-validation-error", candidateVersion, ex);
             return false;
+        } catch (MessageTypeRepositoryBusyException ex) {
+            // The candidate was not checked at all - must not be reported as incompatible
+            throw registryUnavailable(registryContract.getAppName(), registryContract.getMessageType(), ex);
         } catch (RuntimeException ex) {
             log.info("Rejecting Renovate candidate version={} reason=schema-or-validation-error", candidateVersion, ex);
             return false;
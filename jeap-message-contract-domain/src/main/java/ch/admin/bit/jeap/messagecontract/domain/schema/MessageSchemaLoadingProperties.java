@@ -0,0 +1,19 @@
+package ch.admin.bit.jeap.messagecontract.domain.schema;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "jeap.messagecontract.schema-loading")
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSchemaLoadingProperties {
+
+    /**
+     * Maximum number of message type registries that are cloned and read concurrently, shared by all uploads.
+     * Uploads referencing several registries load them in parallel up to this bound.
+     */
+    private int maxConcurrentRegistries = 4;
+}
@@ -1,54 +1,162 @@
 package ch.admin.bit.jeap.messagecontract.domain.schema;
 
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepoException;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepository;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepository.SchemaReference;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryFactory;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeSchemaCache;
 import ch.admin.bit.jeap.messagecontract.persistence.model.MessageContract;
 import io.micrometer.core.annotation.Timed;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static ch.admin.bit.jeap.messagecontract.messagetype.repository.Elapsed.elapsedMs;
 import static java.util.stream.Collectors.groupingBy;
 
+/**
+ * Loads the Avro protocol schemas of uploaded message contracts from their message type registries.
+ * <p>
+ * Contracts are grouped by registry; each registry is cloned once and all of its contracts are resolved in one
+ * batch. Uploads referencing several registries load them concurrently on virtual threads. The number of
+ * registries loaded at the same time is bounded across all uploads by
+ * {@link MessageSchemaLoadingProperties#getMaxConcurrentRegistries()}. The time spent per registry is published
+ * as {@code loadschemas.registry.time}, tagged with the registry URL and the outcome.
+ */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class MessageSchemaService {
 
+    static final String REGISTRY_TIMER_NAME = "loadschemas.registry.time";
+
     private final MessageTypeRepositoryFactory typeRepositoryFactory;
+    private final MessageTypeSchemaCache schemaCache;
+    private final MeterRegistry meterRegistry;
+    private final Semaphore registryPermits;
+
+    public MessageSchemaService(MessageTypeRepositoryFactory typeRepositoryFactory,
+                                MessageTypeSchemaCache schemaCache,
+                                MessageSchemaLoadingProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.typeRepositoryFactory = typeRepositoryFactory;
+        this.schemaCache = schemaCache;
+        this.meterRegistry = meterRegistry;
+        this.registryPermits = new Semaphore(Math.max(1, properties.getMaxConcurrentRegistries()), true);
+    }
 
     @Timed(value = "loadschemas.time", description = "Time taken to load message type schemas from the registry", histogram = true)
     public void loadSchemas(List<MessageContract> messageContracts) {
+        // Contracts pinning a commit that was already resolved are served from the schema cache and never
+        // reach the registry clone below
         var byRegistry = messageContracts.stream()
+                .filter(contract -> !loadSchemaFromCache(contract))
                 .collect(groupingBy(MessageContract::getRegistryUrl));
         log.info("loadSchemas: {} contract(s) across {} registry url(s)", messageContracts.size(), byRegistry.size());
-        byRegistry.forEach(this::loadSchemasFromRepository);
+        if (byRegistry.size() <= 1) {
+            byRegistry.forEach(this::loadSchemasFromRepositoryWithPermit);
+        } else {
+            loadSchemasConcurrently(byRegistry);
+        }
+    }
+
+    private void loadSchemasConcurrently(Map<String, List<MessageContract>> byRegistry) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Map<String, Future<?>> loadsByRegistry = new LinkedHashMap<>();
+            byRegistry.forEach((registryUrl, contracts) -> loadsByRegistry.put(registryUrl,
+                    executor.submit(() -> loadSchemasFromRepositoryWithPermit(registryUrl, contracts))));
+            for (Map.Entry<String, Future<?>> load : loadsByRegistry.entrySet()) {
+                awaitLoad(load.getKey(), load.getValue(), loadsByRegistry.values());
+            }
+        }
+    }
+
+    private static void awaitLoad(String registryUrl, Future<?> load, Collection<Future<?>> allLoads) {
+        try {
+            load.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            allLoads.forEach(otherLoad -> otherLoad.cancel(true));
+            throw MessageTypeRepoException.schemaLoadingInterrupted(registryUrl, ex);
+        } catch (ExecutionException ex) {
+            allLoads.forEach(otherLoad -> otherLoad.cancel(true));
+            // Loading only throws unchecked exceptions - rethrow them as they are, typically MessageTypeRepoException
+            switch (ex.getCause()) {
+                case RuntimeException runtimeException -> throw runtimeException;
+                case Error error -> throw error;
+                default -> throw new IllegalStateException(ex.getCause());
+            }
+        }
+    }
+
+    private void loadSchemasFromRepositoryWithPermit(String registryGitRepoUrl, List<MessageContract> messageContracts) {
+        try {
+            registryPermits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw MessageTypeRepoException.schemaLoadingInterrupted(registryGitRepoUrl, ex);
+        }
+        long startNanos = System.nanoTime();
+        String outcome = "failure";
+        try {
+            loadSchemasFromRepository(registryGitRepoUrl, messageContracts);
+            outcome = "success";
+        } finally {
+            registryPermits.release();
+            Timer.builder(REGISTRY_TIMER_NAME)
+                    .description("Time taken to load the message type schemas of an upload from a single registry")
+                    .tag("registry", registryGitRepoUrl)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private boolean loadSchemaFromCache(MessageContract messageContract) {
+        Optional<String> cachedSchema = schemaCache.get(
+                messageContract.getRegistryUrl(),
+                messageContract.getCommitHash(),
+                messageContract.getMessageType(),
+                messageContract.getMessageTypeVersion());
+        cachedSchema.ifPresent(messageContract::setAvroProtocolSchema);
+        return cachedSchema.isPresent();
     }
 
     private void loadSchemasFromRepository(String registryGitRepoUrl, List<MessageContract> messageContracts) {
         long startNanos = System.nanoTime();
         try (MessageTypeRepository messageTypeRepository = typeRepositoryFactory.cloneRepository(registryGitRepoUrl)) {
-            messageContracts.forEach(contract -> loadSchemaForMessageType(messageTypeRepository, contract));
+            // Resolve all contracts of the registry in one batch so that every distinct commit is checked out once
+            Map<SchemaReference, String> schemas = messageTypeRepository.getSchemasAsAvroProtocolJson(
+                    messageContracts.stream().map(MessageSchemaService::schemaReference).toList());
+            messageContracts.forEach(contract -> setSchema(contract, schemas.get(schemaReference(contract))));
         }
         log.info("loadSchemasFromRepository: registry={} contractCount={} done in {} ms",
                 registryGitRepoUrl, messageContracts.size(), elapsedMs(startNanos));
     }
 
-    private void loadSchemaForMessageType(MessageTypeRepository messageTypeRepository, MessageContract messageContract) {
-        long startNanos = System.nanoTime();
-        String schema = repositoryGetSchema(messageContract, messageTypeRepository);
+    private void setSchema(MessageContract messageContract, String schema) {
         messageContract.setAvroProtocolSchema(schema);
-        log.info("loadSchemaForMessageType: messageType={}:{} branch={} commit={} elapsedMs={}",
+        schemaCache.put(messageContract.getRegistryUrl(), messageContract.getCommitHash(),
+                messageContract.getMessageType(), messageContract.getMessageTypeVersion(), schema);
+        log.debug("setSchema: messageType={}:{} branch={} commit={}",
                 messageContract.getMessageType(), messageContract.getMessageTypeVersion(),
-                messageContract.getBranch(), messageContract.getCommitHash(),
-                elapsedMs(startNanos));
+                messageContract.getBranch(), messageContract.getCommitHash());
     }
 
-    private String repositoryGetSchema(MessageContract messageContract, MessageTypeRepository repository) {
-        return repository.getSchemaAsAvroProtocolJson(
+    private static SchemaReference schemaReference(MessageContract messageContract) {
+        return new SchemaReference(
                 messageContract.getBranch(),
                 messageContract.getCommitHash(),
                 messageContract.getMessageType(),
@@ -1,5 +1,6 @@
 package ch.admin.bit.jeap.messagecontract.domain;
 
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryConfiguration;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryFactory;
 import ch.admin.bit.jeap.messagecontract.persistence.MessageContractRepository;
 import ch.admin.bit.jeap.messagecontract.persistence.PersistenceConfiguration;
@@ -16,7 +17,8 @@ import java.util.List;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @DataJpaTest
-@ContextConfiguration(classes = {PersistenceConfiguration.class, DomainConfiguration.class})
+@ContextConfiguration(classes = {PersistenceConfiguration.class, DomainConfiguration.class,
+        MessageTypeRepositoryConfiguration.class})
 class DeploymentServiceTest {
 
     private final DeploymentService deploymentService;
@@ -1,6 +1,8 @@
 package ch.admin.bit.jeap.messagecontract.domain;
 
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepository;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepository.SchemaReference;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryConfiguration;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryFactory;
 import ch.admin.bit.jeap.messagecontract.persistence.PersistenceConfiguration;
 import ch.admin.bit.jeap.messagecontract.persistence.model.MessageContract;
@@ -13,15 +15,20 @@ import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
+import static java.util.stream.Collectors.toMap;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
 @DataJpaTest
-@ContextConfiguration(classes = {PersistenceConfiguration.class, DomainConfiguration.class})
+@ContextConfiguration(classes = {PersistenceConfiguration.class, DomainConfiguration.class,
+        MessageTypeRepositoryConfiguration.class})
 @ExtendWith(MockitoExtension.class)
 class MessageContractServiceTest {
 
@@ -47,8 +54,8 @@ class MessageContractServiceTest {
     void saveContracts() {
         when(messageTypeRepositoryFactoryMock.cloneRepository(any()))
                 .thenReturn(messageTypeRepoMock);
-        when(messageTypeRepoMock.getSchemaAsAvroProtocolJson(any(), any(), any(), any()))
-                .thenReturn("{}");
+        when(messageTypeRepoMock.getSchemasAsAvroProtocolJson(any()))
+                .thenAnswer(invocation -> schemasFor(invocation.getArgument(0)));
 
         List<MessageContract> appV1Contracts = List.of(
                 MessageContractTestFactory.createContract("app", "v1", TEST_TYPE1, null),
@@ -77,5 +84,9 @@ class MessageContractServiceTest {
                 c.getAppName().equals("app") && c.getAppVersion().equals("v2") && c.getMessageType().equals(TEST_TYPE2)));
     }
 
-
+    private static Map<SchemaReference, String> schemasFor(Collection<SchemaReference> schemaReferences) {
+        return schemaReferences.stream()
+                .distinct()
+                .collect(toMap(Function.identity(), _ -> "{}"));
+    }
 }
@@ -19,6 +19,7 @@ import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.test.context.ContextConfiguration;
 
 import java.util.List;
+import java.util.Map;
 
 import static ch.admin.bit.jeap.messagecontract.persistence.model.MessageContractRole.CONSUMER;
 import static ch.admin.bit.jeap.messagecontract.persistence.model.MessageContractRole.PRODUCER;
@@ -85,6 +86,86 @@ class CompatibilityServiceTest {
         assertThat(result.incompatibilities()).isEmpty();
     }
 
+    @Test
+    void canIDeployManyProducersShouldReportInteractionsAndIncompatibilitiesInCounterpartOrder() {
+        // given: one consumer and several compatible and incompatible producers, validated concurrently
+        saveActivZoneEnteredEventContract(TEST_CONSUMER, "1.0", CONSUMER, VERSION_1_0_0);
+        List<String> producers = List.of("producer-d", "producer-a", "producer-c", "producer-b");
+        for (String producer : producers) {
+            String messageTypeVersion = producer.endsWith("a") || producer.endsWith("c") ? VERSION_2_0_0 : VERSION_1_0_0;
+            saveActivZoneEnteredEventContract(producer, "1.0", PRODUCER, messageTypeVersion);
+            deploymentService.saveNewDeployment(producer, "1.0", "prod");
+        }
+
+        // when
+        CompatibilityCheckResult result = compatibilityService.checkCompatibility(TEST_CONSUMER, "1.0", "prod");
+
+        // then: interactions and incompatibilities are ordered by counterpart app name
+        assertThat(result.compatible()).isFalse();
+        assertThat(result.interactions())
+                .extracting(ConsumerProducerInteraction::appName)
+                .containsExactly("producer-a", "producer-b", "producer-c", "producer-d");
+        assertThat(result.incompatibilities())
+                .extracting(incompatibility -> incompatibility.target().appName())
+                .containsExactly("producer-a", "producer-c");
+    }
+
+    @Test
+    void canIDeployBatchShouldMatchSingleChecksPerTarget() {
+        // given: a consumer deployed on prod and a compatible producer deployed on ref, both consuming/producing v1
+        saveActivZoneEnteredEventContract(TEST_CONSUMER, "1.0", CONSUMER, VERSION_1_0_0);
+        saveActivZoneEnteredEventContract(TEST_PRODUCER, "1.0", PRODUCER, VERSION_1_0_0);
+        saveActivZoneEnteredEventContract(TEST_PRODUCER_2, "2.0", PRODUCER, VERSION_2_0_0);
+        deploymentService.saveNewDeployment(TEST_CONSUMER, "1.0", "prod");
+        deploymentService.saveNewDeployment(TEST_PRODUCER, "1.0", "ref");
+        List<CompatibilityCheckTarget> targets = List.of(
+                new CompatibilityCheckTarget(TEST_PRODUCER, "1.0", "prod"),
+                new CompatibilityCheckTarget(TEST_PRODUCER_2, "2.0", "prod"),
+                new CompatibilityCheckTarget(TEST_CONSUMER, "1.0", "ref"),
+                new CompatibilityCheckTarget(TEST_PRODUCER_2, "2.0", "ref"));
+
+        // when
+        List<CompatibilityCheckResult> results = compatibilityService.checkCompatibility(targets);
+
+        // then: each result equals the one of the corresponding single check
+        assertThat(results).extracting(CompatibilityCheckResult::compatible)
+                .containsExactly(true, false, true, true);
+        for (int i = 0; i < targets.size(); i++) {
+            CompatibilityCheckTarget target = targets.get(i);
+            assertThat(results.get(i)).isEqualTo(compatibilityService.checkCompatibility(
+                    target.appName(), target.appVersion(), target.environment()));
+        }
+    }
+
+    @Test
+    void simulateDeploymentsShouldCheckPlannedVersionsAgainstEachOther() {
+        // given: consumer and producer of v1 deployed on prod, new versions of both moving to v2
+        saveActivZoneEnteredEventContract(TEST_CONSUMER, "1.0", CONSUMER, VERSION_1_0_0);
+        saveActivZoneEnteredEventContract(TEST_PRODUCER, "1.0", PRODUCER, VERSION_1_0_0);
+        saveActivZoneEnteredEventContract(TEST_CONSUMER, "2.0", CONSUMER, VERSION_2_0_0);
+        saveActivZoneEnteredEventContract(TEST_PRODUCER, "2.0", PRODUCER, VERSION_2_0_0);
+        deploymentService.saveNewDeployment(TEST_CONSUMER, "1.0", "prod");
+        deploymentService.saveNewDeployment(TEST_PRODUCER, "1.0", "prod");
+
+        // when: each new version alone is checked, it is incompatible with the deployed counterpart
+        assertThat(compatibilityService.checkCompatibility(TEST_CONSUMER, "2.0", "prod").compatible()).isFalse();
+        assertThat(compatibilityService.checkCompatibility(TEST_PRODUCER, "2.0", "prod").compatible()).isFalse();
+        Map<CompatibilityCheckTarget, CompatibilityCheckResult> results = compatibilityService.simulateDeployments(
+                "prod", Map.of(TEST_PRODUCER, "2.0", TEST_CONSUMER, "2.0"));
+
+        // then: deployed together, both are compatible with the planned version of the other
+        assertThat(results.keySet()).containsExactly(
+                new CompatibilityCheckTarget(TEST_CONSUMER, "2.0", "prod"),
+                new CompatibilityCheckTarget(TEST_PRODUCER, "2.0", "prod"));
+        assertThat(results.values()).allMatch(CompatibilityCheckResult::compatible);
+        assertThat(results.values()).flatExtracting(CompatibilityCheckResult::interactions)
+                .containsExactly(
+                        compatibleInteraction(TEST_PRODUCER, "2.0",
+                                ACTIV_ZONE_ENTERED_EVENT, VERSION_2_0_0, TOPIC, InteractionRole.PRODUCER),
+                        compatibleInteraction(TEST_CONSUMER, "2.0",
+                                ACTIV_ZONE_ENTERED_EVENT, VERSION_2_0_0, TOPIC, InteractionRole.CONSUMER));
+    }
+
     @Test
     void canIDeployNoInteractionsShouldBeCompatible() {
         // given: no contracts or deployments
@@ -53,4 +53,53 @@ class SchemaCompatibilityServiceTest {
         assertThat(v1ComparedToV1).isEmpty();
         assertThat(v1ComparedToV2).isNotEmpty();
     }
+
+    @Test
+    void validateCompatibilityParsesEachDistinctSchemaOnce() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SchemaCompatibilityService cachingService = new SchemaCompatibilityService(
+                new ParsedSchemaCache(new CompatibilityCheckProperties(), meterRegistry), null);
+
+        assertThat(cachingService.validateCompatibility(activZoneEnteredEventV1, activZoneEnteredEventV1)).isEmpty();
+        assertThat(cachingService.validateCompatibility(activZoneEnteredEventV1, activZoneEnteredEventV2)).isNotEmpty();
+        assertThat(cachingService.validateCompatibility(
+                new MessageTypeSchema("ActivZoneEnteredEvent", activZoneEnteredEventV2.avroProtocol()), activZoneEnteredEventV1))
+                .isEqualTo(compatibilityService.validateCompatibility(activZoneEnteredEventV2, activZoneEnteredEventV1));
+
+        assertThat(meterRegistry.get("cache.gets").tag("cache", ParsedSchemaCache.CACHE_NAME).tag("result", "miss")
+                .functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", ParsedSchemaCache.CACHE_NAME).tag("result", "hit")
+                .functionCounter().count()).isEqualTo(4);
+    }
+
+    @Test
+    void validateCompatibilityMemoisesTheResultOfEachSchemaPair() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CompatibilityCheckProperties properties = new CompatibilityCheckProperties();
+        SchemaCompatibilityService cachingService = new SchemaCompatibilityService(
+                new ParsedSchemaCache(properties, meterRegistry), new CompatibilityResultCache(properties, meterRegistry));
+
+        List<SchemaIncompatibility> first = cachingService.validateCompatibility(activZoneEnteredEventV1, activZoneEnteredEventV2);
+        List<SchemaIncompatibility> second = cachingService.validateCompatibility(
+                new MessageTypeSchema("ActivZoneEnteredEvent", activZoneEnteredEventV1.avroProtocol()), activZoneEnteredEventV2);
+        List<SchemaIncompatibility> reversed = cachingService.validateCompatibility(activZoneEnteredEventV2, activZoneEnteredEventV1);
+
+        assertThat(second).isSameAs(first).isNotEmpty();
+        assertThat(reversed).isEqualTo(compatibilityService.validateCompatibility(activZoneEnteredEventV2, activZoneEnteredEventV1));
+        assertThat(meterRegistry.get("cache.gets").tag("cache", CompatibilityResultCache.CACHE_NAME).tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", CompatibilityResultCache.CACHE_NAME).tag("result", "miss")
+                .functionCounter().count()).isEqualTo(2);
+        // Each schema was parsed once, for the first pair it appeared in
+        assertThat(meterRegistry.get("cache.gets").tag("cache", ParsedSchemaCache.CACHE_NAME).tag("result", "miss")
+                .functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void schemaFingerprintIsWeighedByTheUtf8EncodedProtocolSize() {
+        assertThat(SchemaFingerprint.of(new MessageTypeSchema("Event", "{\"doc\":\"abc\"}")).protocolSizeBytes())
+                .isEqualTo(13);
+        assertThat(SchemaFingerprint.of(new MessageTypeSchema("Event", "{\"doc\":\"Zürich\"}")).protocolSizeBytes())
+                .isEqualTo(17);
+    }
 }
@@ -5,6 +5,7 @@ import ch.admin.bit.jeap.messagecontract.domain.compatibility.SchemaIncompatibil
 import ch.admin.bit.jeap.messagecontract.domain.schema.MessageSchemaService;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepoException;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepository;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryBusyException;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryFactory;
 import ch.admin.bit.jeap.messagecontract.persistence.MessageContractRepository;
 import ch.admin.bit.jeap.messagecontract.persistence.model.CompatibilityMode;
@@ -114,6 +115,24 @@ class RenovateCompatibilityServiceUnitTest {
                 .isInstanceOf(RenovateRegistryException.class);
     }
 
+    @Test
+    void candidateSchemaLoadRejectedByBulkheadIsReportedAsUnavailable() {
+        MessageContract deployedProducer = contract(MessageContractRole.PRODUCER);
+        MessageTypeRepository typeRepository = mock(MessageTypeRepository.class);
+        when(contractRepository.findCurrentlyDeployedContracts("PROD", "activzoneenteredevent"))
+                .thenReturn(List.of(deployedProducer));
+        when(repositoryFactory.cloneRepository("registry-url")).thenReturn(typeRepository);
+        when(typeRepository.getMessageTypeSnapshot("master", "ActivZoneEnteredEvent", "activ"))
+                .thenReturn(new MessageTypeRepository.MessageTypeSnapshot(SNAPSHOT_COMMIT, List.of("1.1.0")));
+        doThrow(MessageTypeRepositoryBusyException.waitTimedOut("registry-url", 100))
+                .when(schemaService).loadSchemas(anyList());
+
+        assertThatThrownBy(() -> service.findGloballyCompatibleReleases(PACKAGE_NAME, "1.0.0", "PROD"))
+                .isInstanceOf(RenovateRegistryException.class)
+                .hasCauseInstanceOf(MessageTypeRepositoryBusyException.class);
+        verifyNoInteractions(compatibilityService);
+    }
+
     @Test
     void appCandidateIsRejectedWhenOneOfMultipleSameTopicCounterpartsIsIncompatible() {
         MessageContract requestingConsumer = contract("requesting", MessageContractRole.CONSUMER);
@@ -1,8 +1,11 @@
 package ch.admin.bit.jeap.messagecontract.domain.schema;
 
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepoException;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepository;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryFactory;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryProperties;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeSchemaCache;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeSchemaCacheProperties;
 import ch.admin.bit.jeap.messagecontract.persistence.model.CompatibilityMode;
 import ch.admin.bit.jeap.messagecontract.persistence.model.MessageContract;
 import ch.admin.bit.jeap.messagecontract.persistence.model.MessageContractRole;
@@ -14,8 +17,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 class MessageSchemaServiceTest {
@@ -40,7 +46,7 @@ class MessageSchemaServiceTest {
 
     @BeforeEach
     void setup() {
-        messageSchemaService = new MessageSchemaService(new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(), new SimpleMeterRegistry()));
+        messageSchemaService = newMessageSchemaService(new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(), new SimpleMeterRegistry()), new SimpleMeterRegistry());
     }
 
     @Test
@@ -65,7 +71,7 @@ class MessageSchemaServiceTest {
         MessageTypeRepositoryFactory repoFactory = mock(MessageTypeRepositoryFactory.class);
         MessageTypeRepository repo = mock(MessageTypeRepository.class);
         when(repoFactory.cloneRepository(anyString())).thenReturn(repo);
-        MessageSchemaService localMessageSchemaService = new MessageSchemaService(repoFactory);
+        MessageSchemaService localMessageSchemaService = newMessageSchemaService(repoFactory, new SimpleMeterRegistry());
 
         localMessageSchemaService.loadSchemas(List.of(contract1, contract2, contract3, contract4));
 
@@ -73,6 +79,69 @@ class MessageSchemaServiceTest {
         verify(repoFactory, times(1)).cloneRepository(repoUrl2);
     }
 
+    @SuppressWarnings("resource")
+    @Test
+    void loadSchemasWhenSchemaForPinnedCommitWasAlreadyLoadedThenShouldNotCloneRepositoryAgain() {
+        MessageTypeRepositoryFactory repoFactory = spy(new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(), new SimpleMeterRegistry()));
+        MessageSchemaService localMessageSchemaService = newMessageSchemaService(repoFactory, new SimpleMeterRegistry());
+        MessageContract firstUpload = createContract(testRepo.url());
+        MessageContract secondUpload = createContract(testRepo.url());
+
+        localMessageSchemaService.loadSchemas(List.of(firstUpload));
+        localMessageSchemaService.loadSchemas(List.of(secondUpload));
+
+        verify(repoFactory, times(1)).cloneRepository(testRepo.url());
+        assertThat(secondUpload.getAvroProtocolSchema())
+                .isNotEmpty()
+                .isEqualTo(firstUpload.getAvroProtocolSchema());
+    }
+
+    @SuppressWarnings("resource")
+    @Test
+    void loadSchemasWhenContractsReferenceSeveralRegistriesThenShouldLoadThemConcurrently() {
+        String repoUrl1 = "repoUrl1";
+        String repoUrl2 = "repoUrl2";
+        CountDownLatch bothRegistriesCloning = new CountDownLatch(2);
+        MessageTypeRepositoryFactory repoFactory = mock(MessageTypeRepositoryFactory.class);
+        MessageTypeRepository repo = mock(MessageTypeRepository.class);
+        when(repoFactory.cloneRepository(anyString())).thenAnswer(_ -> {
+            bothRegistriesCloning.countDown();
+            // Only returns if the other registry is cloned at the same time
+            assertThat(bothRegistriesCloning.await(10, TimeUnit.SECONDS)).isTrue();
+            return repo;
+        });
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageSchemaService localMessageSchemaService = newMessageSchemaService(repoFactory, meterRegistry);
+
+        localMessageSchemaService.loadSchemas(List.of(createContract(repoUrl1), createContract(repoUrl2)));
+
+        assertThat(meterRegistry.get(MessageSchemaService.REGISTRY_TIMER_NAME)
+                .tag("registry", repoUrl1).tag("outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MessageSchemaService.REGISTRY_TIMER_NAME)
+                .tag("registry", repoUrl2).tag("outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void loadSchemasWhenOneOfSeveralRegistriesFailsThenShouldThrowRepositoryException() {
+        MessageSchemaService localMessageSchemaService = newMessageSchemaService(
+                new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(), new SimpleMeterRegistry()),
+                new SimpleMeterRegistry());
+        MessageContract validContract = createContract(testRepo.url());
+        MessageContract invalidContract = createContract("file:///does/not/exist.git");
+
+        assertThatThrownBy(() -> localMessageSchemaService.loadSchemas(List.of(validContract, invalidContract)))
+                .isInstanceOf(MessageTypeRepoException.class);
+    }
+
+    private static MessageSchemaService newMessageSchemaService(MessageTypeRepositoryFactory repoFactory,
+                                                                SimpleMeterRegistry meterRegistry) {
+        return new MessageSchemaService(repoFactory, newSchemaCache(), new MessageSchemaLoadingProperties(), meterRegistry);
+    }
+
+    private static MessageTypeSchemaCache newSchemaCache() {
+        return new MessageTypeSchemaCache(new MessageTypeSchemaCacheProperties(), new SimpleMeterRegistry());
+    }
+
     private MessageContract createContract(String repoUrl) {
         return MessageContract.builder()
                 .appName("app")
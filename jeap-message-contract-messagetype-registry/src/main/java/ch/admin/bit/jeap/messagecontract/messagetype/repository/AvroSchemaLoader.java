@@ -4,6 +4,7 @@ import ch.admin.bit.jeap.messaging.avro.plugin.compiler.IdlFileParser;
 import ch.admin.bit.jeap.messaging.avro.plugin.compiler.ImportClassLoader;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Protocol;
+import org.apache.avro.compiler.idl.Idl;
 import org.apache.avro.compiler.idl.ParseException;
 
 import java.io.File;
@@ -27,6 +28,19 @@ class AvroSchemaLoader {
         }
     }
 
+    /**
+     * Parses {@code schemaFile}, resolving imports that are not found next to it through {@code imports}.
+     */
+    static String loadSchemaAsJsonProtocol(String schemaFilename, File schemaFile, ClassLoader imports) {
+        try (Idl idl = new Idl(schemaFile, imports)) {
+            return idl.CompilationUnit().toString();
+        } catch (IOException ex) {
+            throw MessageTypeRepoException.schemaLoadingFailed(schemaFilename, ex, true);
+        } catch (ParseException ex) {
+            throw MessageTypeRepoException.schemaLoadingFailed(schemaFilename, ex, false);
+        }
+    }
+
     private static String loadSchemaFile(IdlFileParser idlFileParser, File source) throws IOException, ParseException {
         Protocol protocol = idlFileParser.parseIdlFile(source);
         return protocol.toString();
@@ -0,0 +1,117 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One generation of the open repository of a reference cache entry, together with a snapshot of its refs taken
+ * when it was opened.
+ * <p>
+ * {@link MessageTypeRepositoryReferenceCache} opens a new generation after every successful refresh of an entry and
+ * retires the previous one. Request threads borrow the current generation read-only via
+ * {@link MessageTypeRepositoryReferenceCache#acquireRepository(String)}, so config, ref database and pack indexes are
+ * loaded once per refresh instead of once per request, and refs are resolved against the in-memory snapshot.
+ * <p>
+ * Usage is reference counted: the cache holds one use until it retires the generation, every borrower holds one
+ * until it calls {@link #close()}. The underlying {@link Repository} is closed once the last use is released.
+ */
+final class CacheRepositoryGeneration implements AutoCloseable {
+
+    private final Repository repository;
+    private final long generation;
+    private final Map<String, Ref> refs;
+    private final AtomicInteger uses = new AtomicInteger(1);
+
+    private CacheRepositoryGeneration(Repository repository, long generation, Map<String, Ref> refs) {
+        this.repository = repository;
+        this.generation = generation;
+        this.refs = refs;
+    }
+
+    /**
+     * Opens the bare repository at {@code gitDir} and snapshots its refs. The returned generation holds one use,
+     * released by {@link #close()}.
+     */
+    static CacheRepositoryGeneration open(File gitDir, long generation) throws IOException {
+        Repository repository = new FileRepositoryBuilder()
+                .setGitDir(gitDir)
+                .setMustExist(true)
+                .build();
+        try {
+            Map<String, Ref> refs = new HashMap<>();
+            for (Ref ref : repository.getRefDatabase().getRefs()) {
+                refs.put(ref.getName(), ref);
+            }
+            Ref head = repository.exactRef(Constants.HEAD);
+            if (head != null) {
+                refs.put(Constants.HEAD, head);
+            }
+            return new CacheRepositoryGeneration(repository, generation, Map.copyOf(refs));
+        } catch (IOException | RuntimeException ex) {
+            repository.close();
+            throw ex;
+        }
+    }
+
+    Repository repository() {
+        return repository;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * Looks up {@code name} (e.g. {@code refs/heads/master} or {@code HEAD}) in the ref snapshot of this generation.
+     */
+    Ref exactRef(String name) {
+        return refs.get(name);
+    }
+
+    /**
+     * All refs in the snapshot of this generation, including {@code HEAD}.
+     */
+    Collection<Ref> refs() {
+        return refs.values();
+    }
+
+    /**
+     * Adds a use to this generation, unless all of its uses have already been released.
+     *
+     * @return {@code false} if the generation is closed and must not be used anymore
+     */
+    boolean tryRetain() {
+        while (true) {
+            int current = uses.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (uses.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases one use, closing the repository when it was the last one.
+     */
+    @Override
+    public void close() {
+        if (uses.decrementAndGet() == 0) {
+            repository.close();
+        }
+    }
+
+    boolean isClosed() {
+        return uses.get() <= 0;
+    }
+}
@@ -40,6 +40,11 @@ public class MessageTypeRepoException extends RuntimeException {
         return new MessageTypeRepoException("Message type repository does not contain a readable directory " + path);
     }
 
+    static MessageTypeRepoException commitTreeReadFailed(String gitUri, String commit, Throwable cause) {
+        return new MessageTypeRepoException(
+                "Failed to read the tree of commit %s from message type repository %s".formatted(commit, gitUri), cause, true);
+    }
+
     static MessageTypeRepoException missingSchema(String schemaName, File messageTypeDir, File systemCommonDir, File rootCommonDir) {
         return new MessageTypeRepoException("Cannot find avro schema %s at %s or %s or %s".formatted(
                 schemaName, messageTypeDir, systemCommonDir, rootCommonDir));
@@ -60,6 +65,11 @@ public class MessageTypeRepoException extends RuntimeException {
                 "Failed to checkout branch %s or commit %s".formatted(branch, commitReference), ex, true);
     }
 
+    public static MessageTypeRepoException schemaLoadingInterrupted(String gitUri, InterruptedException ex) {
+        return new MessageTypeRepoException(
+                "Interrupted while loading schemas from message type repository %s".formatted(gitUri), ex, true);
+    }
+
     public boolean isInfrastructureFailure() {
         return infrastructureFailure;
     }
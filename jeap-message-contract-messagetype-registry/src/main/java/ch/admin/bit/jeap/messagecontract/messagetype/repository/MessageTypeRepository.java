@@ -5,6 +5,9 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
@@ -24,20 +27,32 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static ch.admin.bit.jeap.messagecontract.messagetype.repository.Elapsed.elapsedMs;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
 import static org.eclipse.jgit.lib.Constants.HEAD;
 
 /**
  * Short-lived per-request worktree for a message type registry git repository.
  * <p>
  * Each instance is bound to a single git URI and is meant to be used inside a try-with-resources block:
- * {@link #cloneGitRepo()} provisions a fresh temporary directory and {@link #close()} deletes it.
+ * {@link #cloneGitRepo()} provisions a fresh temporary directory and {@link #close()} deletes it. Cache-backed
+ * instances with a {@link #setWorktreePool(MessageTypeWorktreePool) worktree pool} lease a reusable worktree
+ * instead and return it to the pool on close.
  * <p>
  * The worktree is provisioned in one of two ways:
  * <ul>
@@ -62,14 +77,32 @@ import static org.eclipse.jgit.lib.Constants.HEAD;
  * <p>
  * <b>Stale-cache retry.</b> When the cache is wired and a ref isn't present in the cache (typically
  * because the caller is referencing a commit pushed after the last cache refresh),
- * {@link #checkoutAt} runs the {@link #setCacheMissRefresh(Runnable) cacheMissRefresh} callback - which
- * the factory binds to {@link MessageTypeRepositoryReferenceCache#refreshOne(String)} - and retries once.
+ * {@link #resolveCheckoutTarget} runs the {@link #setCacheMissRefresh(Runnable) cacheMissRefresh} callback - which
+ * the factory binds to {@link MessageTypeRepositoryReferenceCache#refreshOnMiss(String)} - and retries once.
  * One real upstream round-trip is paid to update the cache (over JGit's HTTP transport, which works),
  * then all subsequent requests in the same batch hit the now-fresh cache locally.
+ * <p>
+ * <b>Descriptor index.</b> Descriptors are read from the worktree once per checked-out commit and kept in a
+ * message type name index. Subsequent lookups at the same commit - e.g. the remaining contracts of an upload -
+ * reuse the index instead of rescanning and re-parsing every descriptor. The index is rebuilt only when a
+ * checkout moves HEAD to a different commit.
+ * <p>
+ * <b>Checkout.</b> Branch and commit references are first resolved to a commit SHA (fetching it in direct mode),
+ * then that commit is checked out detached - unless HEAD already points at it. Consecutive requests for the same
+ * commit therefore never re-run a forced checkout, and {@link #getSchemasAsAvroProtocolJson(Collection)} loads a
+ * whole batch of schemas with one checkout per distinct commit.
+ * <p>
+ * <b>Worktree-free mode.</b> When {@link #setWorktreeFree(boolean) worktreeFree} is set on a cache-backed
+ * instance, no temporary worktree is provisioned at all. Refs are resolved in the cache exactly as above, but
+ * instead of checking out the resolved commit it is only remembered, and descriptors are read from the cache's
+ * object database at that commit via {@link RegistryTreeReader}. Only the Avro IDL files of a requested message
+ * type (and its {@code _common} directories) are written to a short-lived scratch directory, since the IDL
+ * parser needs a file as its entry point.
  */
 @SuppressWarnings("findbugs:NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE")
 @Slf4j
 public class MessageTypeRepository implements Closeable {
+    static final String PHASE_TIMER_NAME = "messagetyperepository.phase.time";
     private static final String COMMON = "_common";
 
     private final JsonFactory jsonFactory = new JsonFactory();
@@ -80,20 +113,28 @@ public class MessageTypeRepository implements Closeable {
     /**
      * Optional bare cache repo directory of a locally cached mirror of {@code gitUri}. When set, the temp
      * worktree shares this repository's {@code objects} via {@code .git/objects/info/alternates} and reads
-     * refs (HEAD, branches, requested commit SHAs) directly from its on-disk ref database via
-     * {@link FileRepositoryBuilder}. The temp worktree is never given an {@code origin} remote and never
+     * refs (HEAD, branches, requested commit SHAs) from the ref snapshot of a {@link CacheRepositoryGeneration}
+     * (see {@link #cacheRepositorySource}), never from a ref database a refresh is writing to. The temp worktree is never given an {@code origin} remote and never
      * opens a JGit transport against the cache. See the class Javadoc.
      */
     @Setter
     protected File referenceCacheDir;
     /**
-     * Optional callback invoked by {@link #checkoutAt} when a per-checkout fetch+checkout against the
+     * Optional callback invoked by {@link #resolveCheckoutTarget} when resolving a ref against the
      * cache fails. Bound by {@link MessageTypeRepositoryFactory} to
-     * {@link MessageTypeRepositoryReferenceCache#refreshOne(String)} so that a commit pushed after the
+     * {@link MessageTypeRepositoryReferenceCache#refreshOnMiss(String)} so that a commit pushed after the
      * last refresh can be pulled into the cache before retrying. See the class Javadoc.
      */
     @Setter
     protected Runnable cacheMissRefresh;
+    /**
+     * Optional callback invoked by {@link #resolveCheckoutTarget} with a requested commit SHA that is still missing
+     * from the cache after {@link #cacheMissRefresh}, e.g. because it is older than the boundary of a shallow
+     * mirror. Bound by {@link MessageTypeRepositoryFactory} to
+     * {@link MessageTypeRepositoryReferenceCache#fetchCommit(String, String)}.
+     */
+    @Setter
+    protected Consumer<String> missingCommitFetch;
     /**
      * Optional callback invoked before resolving a branch-only checkout (no commit SHA supplied) so that
      * an upstream branch tip that moved since the last cache refresh is picked up. Bound by
@@ -103,8 +144,74 @@ public class MessageTypeRepository implements Closeable {
      */
     @Setter
     protected Runnable eagerCacheRefresh;
+    /**
+     * Read descriptors and schemas from the {@link #referenceCacheDir} object database instead of a temporary
+     * worktree. Ignored unless a reference cache is wired. Set by {@link MessageTypeRepositoryFactory} from
+     * {@link MessageTypeRepositoryCacheProperties#isWorktreeFree()}. See the class Javadoc.
+     */
+    @Setter
+    protected boolean worktreeFree;
+    /**
+     * Optional pool of reusable cache-backed worktrees. When set together with {@link #referenceCacheDir},
+     * {@link #cloneGitRepo()} leases a worktree from the pool and {@link #close()} returns it instead of deleting
+     * it. Set by {@link MessageTypeRepositoryFactory}.
+     */
+    @Setter
+    protected MessageTypeWorktreePool worktreePool;
+    /**
+     * Optional per-commit cache of {@code _common} import files. When set, schemas are parsed with their
+     * {@code _common} imports served from memory instead of through class loaders over the worktree directories.
+     * Set by {@link MessageTypeRepositoryFactory}.
+     */
+    @Setter
+    protected SchemaImportCache schemaImportCache;
+    /**
+     * Optional cache of compiled schemas. When set, schemas are looked up by the commit their reference resolves to
+     * before that commit is checked out, and newly compiled schemas are added to it - so that schemas pre-compiled
+     * at a branch tip by {@link MessageTypeSchemaPrecompiler} also serve branch-only references. Set by
+     * {@link MessageTypeRepositoryFactory}.
+     */
+    @Setter
+    protected MessageTypeSchemaCache schemaCache;
+    /**
+     * Optional source of the shared, long-lived handle of the {@link #referenceCacheDir} repository. Bound by
+     * {@link MessageTypeRepositoryFactory} to {@link MessageTypeRepositoryReferenceCache#acquireRepository(String)}, so
+     * that refs are resolved against the in-memory snapshot of the current cache generation instead of opening the
+     * cache repository for every lookup. Without it, or if it has no generation to offer, the cache repository is
+     * opened on demand.
+     */
+    @Setter(AccessLevel.PACKAGE)
+    Supplier<Optional<CacheRepositoryGeneration>> cacheRepositorySource;
+    /**
+     * Optional {@link MessageTypeRepositoryBulkhead} permit acquired by {@link MessageTypeRepositoryFactory} for this
+     * instance. Released on {@link #close()}.
+     */
+    @Setter(AccessLevel.PACKAGE)
+    MessageTypeRepositoryBulkhead.Permit bulkheadPermit;
+    /**
+     * Lease on the {@link #referenceCacheDir} entry, taken by {@link MessageTypeRepositoryFactory} so that the entry is
+     * not evicted while this instance (or its worktree, through alternates) reads from it. Released on {@link #close()},
+     * after the worktree has been deleted or returned to the pool.
+     */
+    @Setter(AccessLevel.PACKAGE)
+    MessageTypeRepositoryReferenceCache.EntryLease cacheEntryLease;
+    /**
+     * Optional registry for the {@value #PHASE_TIMER_NAME} timers of worktree provisioning ({@code init}), alternates
+     * setup ({@code alternates}), ref resolution ({@code resolve}) and checkout ({@code checkout}). Set by
+     * {@link MessageTypeRepositoryFactory}.
+     */
+    @Setter(AccessLevel.PACKAGE)
+    MeterRegistry meterRegistry;
     File gitRepoPath;
     private Git git;
+    private DescriptorIndex descriptorIndex;
+    /**
+     * Worktree-free mode only: the cache repository generation borrowed for the lifetime of this instance and the
+     * commit the last ref resolution pointed at.
+     */
+    private CacheRepositoryGeneration cacheRepository;
+    private ObjectId treeCommit;
+    private MessageTypeWorktreePool.PooledWorktree pooledWorktree;
 
     protected MessageTypeRepository(String gitUri) {
         this.jsonMapper = JsonMapper.builder()
@@ -115,29 +222,174 @@ public class MessageTypeRepository implements Closeable {
 
     @Override
     public void close() {
-        forceDeleteDirectory(gitRepoPath);
+        try {
+            if (cacheRepository != null) {
+                cacheRepository.close();
+                cacheRepository = null;
+            }
+            if (pooledWorktree != null) {
+                MessageTypeWorktreePool.PooledWorktree worktree = pooledWorktree;
+                pooledWorktree = null;
+                gitRepoPath = null;
+                worktreePool.release(worktree);
+                return;
+            }
+            forceDeleteDirectory(gitRepoPath);
+        } finally {
+            if (cacheEntryLease != null) {
+                cacheEntryLease.close();
+                cacheEntryLease = null;
+            }
+            if (bulkheadPermit != null) {
+                bulkheadPermit.close();
+                bulkheadPermit = null;
+            }
+        }
     }
 
     public String getSchemaAsAvroProtocolJson(String branch, String commitReference, String messageTypeName, String messageTypeVersion) {
-        log.info("Loading schema for {}:{}", messageTypeName, messageTypeVersion);
+        SchemaReference reference = new SchemaReference(branch, commitReference, messageTypeName, messageTypeVersion);
+        return getSchemasAsAvroProtocolJson(List.of(reference)).get(reference);
+    }
+
+    /**
+     * Batch variant of {@link #getSchemaAsAvroProtocolJson}. All branch and commit references are resolved first,
+     * the schema references are grouped by the commit they resolve to, and each distinct commit is checked out
+     * once to load all schemas referencing it. References sharing a branch or commit reference are resolved only
+     * once. If a {@link #setSchemaCache(MessageTypeSchemaCache) schema cache} is set, commits whose schemas are all
+     * cached are not checked out at all.
+     *
+     * @return the schemas keyed by schema reference, in the order the commits were first referenced
+     */
+    public Map<SchemaReference, String> getSchemasAsAvroProtocolJson(Collection<SchemaReference> schemaReferences) {
+        long startNanos = System.nanoTime();
+        Map<ObjectId, List<SchemaReference>> referencesByCommit = groupByResolvedCommit(schemaReferences);
+        Map<SchemaReference, String> schemas = new LinkedHashMap<>();
+        for (Map.Entry<ObjectId, List<SchemaReference>> commitReferences : referencesByCommit.entrySet()) {
+            ObjectId commit = commitReferences.getKey();
+            List<SchemaReference> uncachedReferences = new ArrayList<>();
+            for (SchemaReference reference : commitReferences.getValue()) {
+                findCachedSchema(commit, reference).ifPresentOrElse(
+                        schema -> schemas.put(reference, schema),
+                        () -> uncachedReferences.add(reference));
+            }
+            if (uncachedReferences.isEmpty()) {
+                continue;
+            }
+            SchemaReference first = uncachedReferences.getFirst();
+            try {
+                checkoutCommit(commit);
+            } catch (Exception ex) {
+                throw MessageTypeRepoException.checkoutFailed(first.branch(), first.commitReference(), ex);
+            }
+            for (SchemaReference reference : uncachedReferences) {
+                log.info("Loading schema for {}:{}", reference.messageTypeName(), reference.messageTypeVersion());
+                String schema = loadSchema(reference.messageTypeName(), reference.messageTypeVersion());
+                schemas.put(reference, schema);
+                if (schemaCache != null && commit != null) {
+                    schemaCache.put(gitUri, commit.name(), reference.messageTypeName(), reference.messageTypeVersion(), schema);
+                }
+            }
+        }
+        log.info("getSchemasAsAvroProtocolJson: {} schema reference(s) at {} commit(s) done in {} ms",
+                schemaReferences.size(), referencesByCommit.size(), elapsedMs(startNanos));
+        return schemas;
+    }
+
+    private Optional<String> findCachedSchema(ObjectId commit, SchemaReference reference) {
+        if (schemaCache == null || commit == null) {
+            return Optional.empty();
+        }
+        return schemaCache.get(gitUri, commit.name(), reference.messageTypeName(), reference.messageTypeVersion());
+    }
+
+    /**
+     * Returns a commit-pinned schema reference for every version of every event and command message type at
+     * {@code commitReference}.
+     */
+    public List<SchemaReference> getAllSchemaReferences(String commitReference) {
         try {
-            checkoutAt(branch, commitReference);
+            checkoutAt(null, commitReference);
         } catch (Exception ex) {
-            throw MessageTypeRepoException.checkoutFailed(branch, commitReference, ex);
+            throw MessageTypeRepoException.checkoutFailed(null, commitReference, ex);
         }
+        DescriptorIndex index = currentDescriptorIndex();
+        String commitHash = index.commit() != null ? index.commit().name() : commitReference;
+        return index.descriptorsByName().values().stream()
+                .flatMap(List::stream)
+                .flatMap(descriptor -> descriptor.getVersions().stream()
+                        .map(version -> new SchemaReference(null, commitHash, descriptor.getMessageTypeName(), version.getVersion())))
+                .distinct()
+                .toList();
+    }
 
-        List<CommandDescriptor> commandDescriptors = getAllCommandDescriptors();
-        List<EventDescriptor> eventDescriptors = getAllEventDescriptors();
+    private Map<ObjectId, List<SchemaReference>> groupByResolvedCommit(Collection<SchemaReference> schemaReferences) {
+        Map<Revision, ObjectId> resolvedCommits = new HashMap<>();
+        Map<ObjectId, List<SchemaReference>> referencesByCommit = new LinkedHashMap<>();
+        for (SchemaReference reference : schemaReferences) {
+            Revision revision = new Revision(reference.branch(), reference.commitReference());
+            ObjectId commit = resolvedCommits.get(revision);
+            if (commit == null) {
+                try {
+                    commit = resolveCheckoutTarget(reference.branch(), reference.commitReference());
+                } catch (Exception ex) {
+                    throw MessageTypeRepoException.checkoutFailed(reference.branch(), reference.commitReference(), ex);
+                }
+                resolvedCommits.put(revision, commit);
+            }
+            referencesByCommit.computeIfAbsent(commit, _ -> new ArrayList<>()).add(reference);
+        }
+        return referencesByCommit;
+    }
 
-        MessageTypeDescriptor descriptor = Stream.concat(eventDescriptors.stream(), commandDescriptors.stream())
-                .filter(d -> messageTypeName.equals(d.getMessageTypeName()))
+    private String loadSchema(String messageTypeName, String messageTypeVersion) {
+        MessageTypeDescriptor descriptor = findDescriptors(messageTypeName).stream()
                 .findFirst()
                 .orElseThrow(MessageTypeRepoException.messageTypeNotFound(messageTypeName));
 
         MessageTypeVersion version = descriptor.findVersion(messageTypeVersion)
                 .orElseThrow(MessageTypeRepoException.messageTypeVersionNotFound(messageTypeName, messageTypeVersion));
         String schemaFilename = version.getValueSchema();
-        return AvroSchemaLoader.loadSchemaAsJsonProtocol(schemaFilename, descriptor.getSchemaLocations());
+        SchemaLocations schemaLocations = descriptor.getSchemaLocations();
+        if (isWorktreeFree()) {
+            return loadSchemaFromTree(schemaFilename, schemaLocations);
+        }
+        if (schemaImportCache != null) {
+            return AvroSchemaLoader.loadSchemaAsJsonProtocol(schemaFilename,
+                    schemaLocations.findSchemaFile(schemaFilename), worktreeImports(schemaFilename, schemaLocations));
+        }
+        return AvroSchemaLoader.loadSchemaAsJsonProtocol(schemaFilename, schemaLocations);
+    }
+
+    private ClassLoader worktreeImports(String schemaFilename, SchemaLocations schemaLocations) {
+        Path root = gitRepoPath.toPath();
+        try {
+            return schemaImportCache.getImports(gitUri, descriptorIndex.commit(),
+                    relativePath(root, schemaLocations.systemCommonDir()),
+                    relativePath(root, schemaLocations.rootCommonDir()),
+                    () -> SchemaImportClassLoader.merge(
+                            readDirectoryFiles(schemaLocations.systemCommonDir()),
+                            readDirectoryFiles(schemaLocations.rootCommonDir())));
+        } catch (IOException ex) {
+            throw MessageTypeRepoException.schemaLoadingFailed(schemaFilename, ex, true);
+        }
+    }
+
+    private static String relativePath(Path root, File dir) {
+        return FilenameUtils.separatorsToUnix(root.relativize(dir.toPath()).toString());
+    }
+
+    private static Map<String, byte[]> readDirectoryFiles(File dir) throws IOException {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) {
+            return Map.of();
+        }
+        Arrays.sort(files);
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        for (File file : files) {
+            contents.put(file.getName(), Files.readAllBytes(file.toPath()));
+        }
+        return contents;
     }
 
     public List<String> getMessageTypeVersions(String branch, String commitReference, String messageTypeName,
@@ -154,7 +406,7 @@ public class MessageTypeRepository implements Closeable {
     public MessageTypeSnapshot getMessageTypeSnapshot(String branch, String messageTypeName, String definingSystem) {
         try {
             checkoutAt(branch, null);
-            ObjectId revision = git.getRepository().resolve(HEAD);
+            ObjectId revision = resolveHead();
             if (revision == null) {
                 throw new IOException("HEAD does not resolve to a commit");
             }
@@ -165,8 +417,7 @@ public class MessageTypeRepository implements Closeable {
     }
 
     private List<String> findMessageTypeVersions(String messageTypeName, String definingSystem) {
-        return Stream.concat(getAllEventDescriptors().stream(), getAllCommandDescriptors().stream())
-                .filter(descriptor -> messageTypeName.equals(descriptor.getMessageTypeName()))
+        return findDescriptors(messageTypeName).stream()
                 .filter(descriptor -> definingSystem.equalsIgnoreCase(descriptor.getDefiningSystem()))
                 .findFirst()
                 .orElseThrow(MessageTypeRepoException.messageTypeNotFound(messageTypeName))
@@ -181,88 +432,136 @@ public class MessageTypeRepository implements Closeable {
         }
     }
 
+    /**
+     * A schema to load with {@link #getSchemasAsAvroProtocolJson(Collection)}. {@code branch} and
+     * {@code commitReference} have the same meaning as for {@link #getSchemaAsAvroProtocolJson}.
+     */
+    public record SchemaReference(String branch, String commitReference, String messageTypeName,
+                                  String messageTypeVersion) {
+    }
+
+    private record Revision(String branch, String commitReference) {
+    }
+
     private void checkoutAt(String branch, String commitReference) throws GitAPIException {
         long startNanos = System.nanoTime();
         log.info("checkoutAt: enter branch={} commit={}", branch, commitReference);
+        checkoutCommit(resolveCheckoutTarget(branch, commitReference));
+        log.info("checkoutAt: completed branch={} commit={} totalElapsedMs={}", branch, commitReference, elapsedMs(startNanos));
+    }
+
+    /**
+     * Resolves {@code commitReference} (if set and not {@code HEAD}) or else the tip of {@code branch} to a
+     * commit that is locally available for checkout, without touching the worktree. Returns the current HEAD
+     * commit if neither is given.
+     */
+    private ObjectId resolveCheckoutTarget(String branch, String commitReference) throws GitAPIException {
+        long startNanos = System.nanoTime();
+        ObjectId target = resolveCheckoutTargetWithRetry(branch, commitReference, startNanos);
+        recordPhase("resolve", startNanos);
+        return target;
+    }
+
+    private ObjectId resolveCheckoutTargetWithRetry(String branch, String commitReference, long startNanos) throws GitAPIException {
         try {
-            fetchAndCheckout(branch, commitReference);
+            return resolveTarget(branch, commitReference);
         } catch (GitAPIException ex) {
             long firstAttemptElapsed = elapsedMs(startNanos);
             if (cacheMissRefresh == null) {
-                log.warn("checkoutAt: fetch/checkout failed branch={} commit={} after {} ms; no cache to refresh, propagating", branch, commitReference, firstAttemptElapsed);
+                log.warn("resolveCheckoutTarget: resolve failed branch={} commit={} after {} ms; no cache to refresh, propagating", branch, commitReference, firstAttemptElapsed);
                 throw ex;
             }
-            log.info("checkoutAt: fetch/checkout failed branch={} commit={} after {} ms; refreshing reference cache and retrying ({}: {})", branch, commitReference, firstAttemptElapsed, ex.getClass().getSimpleName(), ex.getMessage());
+            log.info("resolveCheckoutTarget: resolve failed branch={} commit={} after {} ms; refreshing reference cache and retrying ({}: {})", branch, commitReference, firstAttemptElapsed, ex.getClass().getSimpleName(), ex.getMessage());
             long refreshStart = System.nanoTime();
             try {
                 cacheMissRefresh.run();
             } catch (RuntimeException refreshEx) {
-                log.warn("checkoutAt: cache refresh-on-miss failed after {} ms", elapsedMs(refreshStart), refreshEx);
+                log.warn("resolveCheckoutTarget: cache refresh-on-miss failed after {} ms", elapsedMs(refreshStart), refreshEx);
                 throw ex;
             }
-            log.debug("checkoutAt: cache refresh-on-miss completed in {} ms; retrying fetch/checkout", elapsedMs(refreshStart));
-            fetchAndCheckout(branch, commitReference);
+            log.debug("resolveCheckoutTarget: cache refresh-on-miss completed in {} ms; retrying resolve", elapsedMs(refreshStart));
+            try {
+                return resolveTarget(branch, commitReference);
+            } catch (RefNotFoundException retryEx) {
+                if (missingCommitFetch == null || commitReference == null || HEAD.equalsIgnoreCase(commitReference)) {
+                    throw retryEx;
+                }
+                log.info("resolveCheckoutTarget: commit {} still missing after refresh; fetching it into the cache", commitReference);
+                missingCommitFetch.accept(commitReference);
+                return resolveTarget(branch, commitReference);
+            }
         }
-        log.info("checkoutAt: completed branch={} commit={} totalElapsedMs={}", branch, commitReference, elapsedMs(startNanos));
     }
 
-    private void fetchAndCheckout(String branch, String commitReference) throws GitAPIException {
+    private void recordPhase(String phase, long startNanos) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Timer.builder(PHASE_TIMER_NAME)
+                .description("Time taken by a phase of provisioning a message type repository or resolving a schema")
+                .tag("phase", phase)
+                .tag("source", referenceCacheDir != null ? "cache" : "upstream")
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ObjectId resolveTarget(String branch, String commitReference) throws GitAPIException {
         if (referenceCacheDir != null) {
-            cacheRefCheckout(branch, commitReference);
+            return resolveInCache(branch, commitReference);
         } else {
-            directFetchAndCheckout(branch, commitReference);
+            return fetchDirect(branch, commitReference);
         }
     }
 
     /**
-     * Cache-mode checkout: read the requested ref from the cache repository directly, install it as a
-     * local ref in the temp worktree (or check out by SHA for commit references), then checkout. No JGit
-     * transport is opened. On a cache miss, throws {@link RefNotFoundException} so the
-     * {@link #cacheMissRefresh} retry path in {@link #checkoutAt} fires.
+     * Checks out {@code commit} (detached), unless HEAD already points at it. In worktree-free mode, only
+     * remembers the commit to read from.
      */
-    private void cacheRefCheckout(String branch, String commitReference) throws GitAPIException {
-        if (commitReference != null && !HEAD.equalsIgnoreCase(commitReference)) {
-            cacheCheckoutCommit(commitReference);
-        } else if (branch != null) {
-            cacheCheckoutBranch(branch);
+    private void checkoutCommit(ObjectId commit) throws GitAPIException {
+        if (commit == null) {
+            return;
+        }
+        if (isWorktreeFree()) {
+            treeCommit = commit;
+            return;
+        }
+        if (commit.equals(resolveHead())) {
+            log.debug("checkoutCommit: HEAD already at {}, skipping checkout", commit.name());
+            return;
         }
-    }
-
-    private void cacheCheckoutCommit(String commitReference) throws GitAPIException {
-        long resolveStart = System.nanoTime();
-        ObjectId commitSha = resolveCommitInCache(commitReference);
-        log.debug("cacheRefCheckout: commit {} resolved in {} ms", commitReference, elapsedMs(resolveStart));
-
         long checkoutStart = System.nanoTime();
         git.checkout()
                 .setForced(true)
-                .setName(commitSha.name())
+                .setName(commit.name())
                 .call();
-        log.debug("cacheRefCheckout: checkout commit={} done in {} ms", commitReference, elapsedMs(checkoutStart));
+        recordPhase("checkout", checkoutStart);
+        log.debug("checkoutCommit: checkout commit={} done in {} ms", commit.name(), elapsedMs(checkoutStart));
     }
 
-    private void cacheCheckoutBranch(String branch) throws GitAPIException {
-        // Branch-only checkout has no caller-supplied SHA to anchor on, so refresh the cache first to pick
-        // up an upstream branch tip that may have moved since the last refresh. The eager-refresh callback
-        // is debounced inside the cache so a batch of uploads pays at most one upstream round-trip.
-        if (eagerCacheRefresh != null) {
-            eagerCacheRefresh.run();
+    /**
+     * Cache-mode resolution: read the requested ref from the cache repository directly. No JGit transport is
+     * opened. On a cache miss, throws {@link RefNotFoundException} so the {@link #cacheMissRefresh} retry path
+     * in {@link #resolveCheckoutTarget} fires.
+     */
+    private ObjectId resolveInCache(String branch, String commitReference) throws GitAPIException {
+        if (commitReference != null && !HEAD.equalsIgnoreCase(commitReference)) {
+            long resolveStart = System.nanoTime();
+            ObjectId commitSha = resolveCommitInCache(commitReference);
+            log.debug("resolveInCache: commit {} resolved in {} ms", commitReference, elapsedMs(resolveStart));
+            return commitSha;
+        } else if (branch != null) {
+            // Branch-only checkout has no caller-supplied SHA to anchor on, so refresh the cache first to pick
+            // up an upstream branch tip that may have moved since the last refresh. The eager-refresh callback
+            // is debounced inside the cache so a batch of uploads pays at most one upstream round-trip.
+            if (eagerCacheRefresh != null) {
+                eagerCacheRefresh.run();
+            }
+            long resolveStart = System.nanoTime();
+            ObjectId branchSha = resolveBranchInCache(branch, Constants.R_HEADS + branch);
+            log.debug("resolveInCache: branch {} resolved to {} in {} ms", branch, branchSha.name(), elapsedMs(resolveStart));
+            return branchSha;
         }
-        String localRef = Constants.R_HEADS + branch;
-        long resolveStart = System.nanoTime();
-        ObjectId branchSha = resolveBranchInCache(branch, localRef);
-        log.debug("cacheRefCheckout: branch {} resolved to {} in {} ms", branch, branchSha.name(), elapsedMs(resolveStart));
-
-        long installStart = System.nanoTime();
-        installLocalRef(localRef, branchSha);
-        log.debug("cacheRefCheckout: installed local ref {} in {} ms", localRef, elapsedMs(installStart));
-
-        long checkoutStart = System.nanoTime();
-        git.checkout()
-                .setForced(true)
-                .setName(branch)
-                .call();
-        log.debug("cacheRefCheckout: checkout branch={} done in {} ms", branch, elapsedMs(checkoutStart));
+        return resolveHead();
     }
 
     private ObjectId resolveCommitInCache(String commitReference) throws RefNotFoundException {
@@ -270,8 +569,8 @@ public class MessageTypeRepository implements Closeable {
             throw new RefNotFoundException("Invalid commit id: " + commitReference);
         }
         ObjectId commitSha = ObjectId.fromString(commitReference);
-        try (Repository cacheRepo = openCacheRepository()) {
-            cacheRepo.parseCommit(commitSha); // throws MissingObjectException if not present
+        try (CacheRepositoryGeneration cacheRepo = acquireCacheRepository()) {
+            cacheRepo.repository().parseCommit(commitSha); // throws MissingObjectException if not present
         } catch (MissingObjectException ex) {
             throw new RefNotFoundException("Commit " + commitReference + " not present in reference cache", ex);
         } catch (IOException ex) {
@@ -281,7 +580,7 @@ public class MessageTypeRepository implements Closeable {
     }
 
     private ObjectId resolveBranchInCache(String branch, String localRef) throws RefNotFoundException {
-        try (Repository cacheRepo = openCacheRepository()) {
+        try (CacheRepositoryGeneration cacheRepo = acquireCacheRepository()) {
             Ref cacheBranchRef = cacheRepo.exactRef(localRef);
             if (cacheBranchRef == null || cacheBranchRef.getObjectId() == null) {
                 throw new RefNotFoundException("Branch " + branch + " not present in reference cache");
@@ -292,22 +591,11 @@ public class MessageTypeRepository implements Closeable {
         }
     }
 
-    private void installLocalRef(String localRef, ObjectId sha) {
-        try {
-            RefUpdate refUpdate = git.getRepository().updateRef(localRef);
-            refUpdate.setNewObjectId(sha);
-            refUpdate.setForceUpdate(true);
-            refUpdate.update();
-        } catch (IOException ex) {
-            throw new JGitInternalException("Failed to install local ref " + localRef, ex);
-        }
-    }
-
     /**
-     * Direct-clone (no-cache) fallback: shallow fetch the requested ref from the real upstream and check
-     * it out. This is the original JEAP-7002 behaviour, kept for environments without the cache.
+     * Direct-clone (no-cache) fallback: shallow fetch the requested ref from the real upstream and resolve it
+     * locally. This is the original JEAP-7002 behaviour, kept for environments without the cache.
      */
-    private void directFetchAndCheckout(String branch, String commitReference) throws GitAPIException {
+    private ObjectId fetchDirect(String branch, String commitReference) throws GitAPIException {
         if (commitReference != null && !HEAD.equalsIgnoreCase(commitReference)) {
             long fetchStart = System.nanoTime();
             git.fetch()
@@ -315,13 +603,8 @@ public class MessageTypeRepository implements Closeable {
                     .setDepth(1)
                     .setRefSpecs(new RefSpec(commitReference))
                     .call();
-            log.debug("fetchAndCheckout: fetch commit={} done in {} ms", commitReference, elapsedMs(fetchStart));
-            long checkoutStart = System.nanoTime();
-            git.checkout()
-                    .setForced(true)
-                    .setName(commitReference)
-                    .call();
-            log.debug("fetchAndCheckout: checkout commit={} done in {} ms", commitReference, elapsedMs(checkoutStart));
+            log.debug("fetchDirect: fetch commit={} done in {} ms", commitReference, elapsedMs(fetchStart));
+            return resolveLocal(commitReference);
         } else if (branch != null) {
             long fetchStart = System.nanoTime();
             git.fetch()
@@ -329,13 +612,139 @@ public class MessageTypeRepository implements Closeable {
                     .setDepth(1)
                     .setRefSpecs(new RefSpec("+refs/heads/" + branch + ":refs/remotes/origin/" + branch))
                     .call();
-            log.debug("fetchAndCheckout: fetch branch={} done in {} ms", branch, elapsedMs(fetchStart));
-            long checkoutStart = System.nanoTime();
-            git.checkout()
-                    .setForced(true)
-                    .setName("origin/" + branch)
-                    .call();
-            log.debug("fetchAndCheckout: checkout branch={} done in {} ms", branch, elapsedMs(checkoutStart));
+            log.debug("fetchDirect: fetch branch={} done in {} ms", branch, elapsedMs(fetchStart));
+            return resolveLocal(Constants.R_REMOTES + "origin/" + branch);
+        }
+        return resolveHead();
+    }
+
+    private ObjectId resolveLocal(String revision) throws RefNotFoundException {
+        try {
+            ObjectId commit = git.getRepository().resolve(revision + "^{commit}");
+            if (commit == null) {
+                throw new RefNotFoundException("Revision " + revision + " not found after fetch");
+            }
+            return commit;
+        } catch (IOException ex) {
+            throw new JGitInternalException("Failed to resolve " + revision, ex);
+        }
+    }
+
+    /**
+     * Returns all descriptors named {@code messageTypeName} at the currently checked-out commit, event
+     * descriptors first. Served from the {@link DescriptorIndex} if HEAD still points at the commit the index was
+     * built for.
+     */
+    private List<MessageTypeDescriptor> findDescriptors(String messageTypeName) {
+        return currentDescriptorIndex().descriptorsByName().getOrDefault(messageTypeName, List.of());
+    }
+
+    private DescriptorIndex currentDescriptorIndex() {
+        ObjectId headCommit = resolveHead();
+        if (descriptorIndex == null || headCommit == null || !headCommit.equals(descriptorIndex.commit())) {
+            long startNanos = System.nanoTime();
+            descriptorIndex = buildDescriptorIndex(headCommit);
+            log.debug("Built descriptor index with {} message type(s) at {} in {} ms",
+                    descriptorIndex.descriptorsByName().size(), headCommit == null ? null : headCommit.name(), elapsedMs(startNanos));
+        }
+        return descriptorIndex;
+    }
+
+    private DescriptorIndex buildDescriptorIndex(ObjectId commit) {
+        RegistryTreeReader treeReader = isWorktreeFree() ? createTreeReader(commit) : null;
+        Stream<MessageTypeDescriptor> descriptors = treeReader != null
+                ? Stream.<MessageTypeDescriptor>concat(readTreeDescriptors(treeReader, EventDescriptor.SUBDIR, EventDescriptor.class),
+                                readTreeDescriptors(treeReader, CommandDescriptor.SUBDIR, CommandDescriptor.class))
+                : Stream.<MessageTypeDescriptor>concat(getAllEventDescriptors().stream(), getAllCommandDescriptors().stream());
+        Map<String, List<MessageTypeDescriptor>> descriptorsByName = descriptors
+                .collect(groupingBy(MessageTypeDescriptor::getMessageTypeName, LinkedHashMap::new, toList()));
+        return new DescriptorIndex(commit, descriptorsByName, treeReader);
+    }
+
+    private ObjectId resolveHead() {
+        if (isWorktreeFree()) {
+            return treeCommit;
+        }
+        try {
+            return git.getRepository().resolve(HEAD);
+        } catch (IOException ex) {
+            log.debug("Failed to resolve HEAD, descriptor index will not be reused", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Message type descriptors of a single commit, indexed by message type name. In worktree-free mode, also
+     * holds the reader the descriptors were read with so that schema files can be read from the same commit.
+     */
+    private record DescriptorIndex(ObjectId commit, Map<String, List<MessageTypeDescriptor>> descriptorsByName,
+                                   RegistryTreeReader treeReader) {
+    }
+
+    private boolean isWorktreeFree() {
+        return worktreeFree && referenceCacheDir != null;
+    }
+
+    private RegistryTreeReader createTreeReader(ObjectId commit) {
+        try {
+            return new RegistryTreeReader(cacheRepository.repository(), commit);
+        } catch (IOException ex) {
+            throw MessageTypeRepoException.commitTreeReadFailed(gitUri, commit.name(), ex);
+        }
+    }
+
+    private <T extends MessageTypeDescriptor> Stream<MessageTypeDescriptor> readTreeDescriptors(
+            RegistryTreeReader treeReader, String typeSubdir, Class<T> descriptorType) {
+        return treeReader.findDescriptorPaths(typeSubdir).stream()
+                .flatMap(descriptorPath -> tryReadTreeDescriptor(treeReader, descriptorPath, descriptorType).stream());
+    }
+
+    private <T extends MessageTypeDescriptor> Optional<T> tryReadTreeDescriptor(RegistryTreeReader treeReader,
+                                                                               String descriptorPath, Class<T> descriptorType) {
+        log.trace("Loading message type descriptor {} at {}", descriptorPath, treeReader.commit().name());
+        try {
+            T descriptor = jsonMapper.readValue(treeReader.readFile(descriptorPath), descriptorType);
+            descriptor.setSchemaLocations(RegistryTreeReader.schemaLocationsFor(descriptorPath));
+            return Optional.of(descriptor);
+        } catch (IOException e) {
+            log.warn("Failed to load message type descriptor {}", descriptorPath,
+                    MessageTypeRepoException.descriptorParsingFailed(descriptorPath, e));
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Worktree-free counterpart of {@link AvroSchemaLoader#loadSchemaAsJsonProtocol}: writes the schema files of
+     * the message type to a scratch directory, parses them there and removes the directory again.
+     */
+    private String loadSchemaFromTree(String schemaFilename, SchemaLocations schemaLocations) {
+        long startNanos = System.nanoTime();
+        File scratchDir = null;
+        try {
+            scratchDir = Files.createTempDirectory("messageTypeSchema").toFile(); // NOSONAR
+            RegistryTreeReader treeReader = descriptorIndex.treeReader();
+            if (schemaImportCache == null) {
+                SchemaLocations extracted = treeReader.extractSchemaFiles(schemaLocations, scratchDir.toPath());
+                log.debug("loadSchemaFromTree: extracted schema files for {} in {} ms", schemaFilename, elapsedMs(startNanos));
+                return AvroSchemaLoader.loadSchemaAsJsonProtocol(schemaFilename, extracted);
+            }
+            // _common imports are served from memory, so only the message type directory needs to be written -
+            // unless the schema file itself lives in a _common directory
+            String systemCommonDir = RegistryTreeReader.repoPath(schemaLocations.systemCommonDir());
+            String rootCommonDir = RegistryTreeReader.repoPath(schemaLocations.rootCommonDir());
+            boolean schemaInMessageTypeDir = treeReader.containsFile(
+                    RegistryTreeReader.repoPath(schemaLocations.messageTypeDir()) + "/" + schemaFilename);
+            SchemaLocations extracted = treeReader.extractSchemaFiles(schemaLocations, scratchDir.toPath(), !schemaInMessageTypeDir);
+            ClassLoader imports = schemaImportCache.getImports(gitUri, treeReader.commit(), systemCommonDir, rootCommonDir,
+                    () -> SchemaImportClassLoader.merge(
+                            treeReader.readDirectoryFiles(systemCommonDir),
+                            treeReader.readDirectoryFiles(rootCommonDir)));
+            log.debug("loadSchemaFromTree: prepared schema files for {} in {} ms", schemaFilename, elapsedMs(startNanos));
+            return AvroSchemaLoader.loadSchemaAsJsonProtocol(schemaFilename, extracted.findSchemaFile(schemaFilename), imports);
+        } catch (IOException ex) {
+            throw MessageTypeRepoException.schemaLoadingFailed(schemaFilename, ex, true);
+        } finally {
+            forceDeleteDirectory(scratchDir);
         }
     }
 
@@ -356,17 +765,37 @@ public class MessageTypeRepository implements Closeable {
     /**
      * Provisions the temporary worktree backing this repository.
      * <p>
-     * If {@link #referenceCacheDir} is set, delegates to
+     * If {@link #referenceCacheDir} and a {@link #worktreePool} are set, leases a pooled worktree instead of
+     * creating one. Otherwise, if {@link #referenceCacheDir} is set, delegates to
      * {@link #cloneWithReference(File)} which sets up a {@code git init} + alternates layout and copies
      * the cache's HEAD ref directly - no JGit transport is opened against the cache.
      * Otherwise performs a {@code clone --depth 1 --no-tags} from {@code gitUri}.
      */
     public void cloneGitRepo() {
         long startNanos = System.nanoTime();
+        provisionWorktree(startNanos);
+        recordPhase("init", startNanos);
+    }
+
+    private void provisionWorktree(long startNanos) {
+        if (isWorktreeFree()) {
+            openCacheForTreeReads();
+            log.info("cloneGitRepo: worktree-free access to {} via reference cache {} at {} in {} ms",
+                    gitUri, referenceCacheDir, treeCommit.name(), elapsedMs(startNanos));
+            return;
+        }
+        if (worktreePool != null && referenceCacheDir != null) {
+            Optional<MessageTypeWorktreePool.PooledWorktree> leasedWorktree = worktreePool.lease(gitUri, referenceCacheDir);
+            if (leasedWorktree.isPresent()) {
+                usePooledWorktree(leasedWorktree.get());
+                log.info("cloneGitRepo: pooled worktree {} for {} ready in {} ms", gitRepoPath, gitUri, elapsedMs(startNanos));
+                return;
+            }
+        }
         File tempDir = null;
         try {
+            // Deleted in close() - not registered for delete-on-exit, which would grow with every request
             tempDir = Files.createTempDirectory("messageTypeRepo").toFile(); // NOSONAR
-            FileUtils.forceDeleteOnExit(tempDir);
             if (referenceCacheDir != null) {
                 log.info("cloneGitRepo: cache-backed clone of {} into {} using reference cache {}", gitUri, tempDir, referenceCacheDir);
                 this.git = cloneWithReference(tempDir);
@@ -395,74 +824,146 @@ public class MessageTypeRepository implements Closeable {
      *   <li>{@code git init} the directory.</li>
      *   <li>Write {@code .git/objects/info/alternates} pointing at the cache's {@code objects} dir so that
      *       every object already present in the cached bare mirror is reachable without re-downloading.</li>
-     *   <li>Open the cache repository read-only via {@link FileRepositoryBuilder}, read its symbolic
+     *   <li>Borrow the cache repository read-only (see {@link #acquireCacheRepository()}), read its symbolic
      *       {@code HEAD}, and resolve the target branch name + commit SHA.</li>
      *   <li>Install that branch ref locally in the temp repo via {@link RefUpdate}, then point HEAD at it
      *       symbolically.</li>
      *   <li>{@code git.checkout()} the freshly installed ref - objects are reachable through alternates.</li>
      * </ol>
-     * Cache staleness is handled in {@link #checkoutAt} via {@link #cacheMissRefresh}.
+     * Cache staleness is handled in {@link #resolveCheckoutTarget} via {@link #cacheMissRefresh}.
      */
     private Git cloneWithReference(File tempDir) throws IOException, GitAPIException {
         long stepStart = System.nanoTime();
-        Git initializedGit = Git.init().setDirectory(tempDir).call();
-        log.debug("cloneWithReference: git init done in {} ms", elapsedMs(stepStart));
+        Git initializedGit = initWithAlternates(tempDir, referenceCacheDir);
+        recordPhase("alternates", stepStart);
+        log.debug("cloneWithReference: git init with alternates done in {} ms", elapsedMs(stepStart));
+        try {
+            checkoutCacheHead(initializedGit);
+            return initializedGit;
+        } catch (Exception ex) {
+            initializedGit.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs {@code git init} in {@code directory} and writes {@code .git/objects/info/alternates} pointing at the
+     * {@code objects} dir of {@code referenceCacheDir}, so that every object already present in the cached bare
+     * mirror is reachable without re-downloading. Also used by {@link MessageTypeWorktreePool} to create pooled
+     * worktrees.
+     */
+    static Git initWithAlternates(File directory, File referenceCacheDir) throws IOException, GitAPIException {
+        Git initializedGit = Git.init().setDirectory(directory).call();
         try {
             File cacheObjectsDir = new File(referenceCacheDir, "objects");
-            stepStart = System.nanoTime();
-            Path alternates = tempDir.toPath().resolve(".git/objects/info/alternates");
+            Path alternates = directory.toPath().resolve(".git/objects/info/alternates");
             Files.createDirectories(alternates.getParent());
             Files.writeString(alternates, cacheObjectsDir.getAbsolutePath() + System.lineSeparator());
-            log.debug("cloneWithReference: alternates written in {} ms", elapsedMs(stepStart));
-
-            stepStart = System.nanoTime();
-            String targetRefName;
-            ObjectId targetSha;
-            try (Repository cacheRepo = openCacheRepository()) {
-                Ref cacheHead = cacheRepo.exactRef(Constants.HEAD);
-                if (cacheHead == null) {
-                    throw new IOException("Reference cache " + referenceCacheDir + " has no HEAD");
-                }
-                Ref leaf = cacheHead.getLeaf();
-                targetRefName = leaf.getName();
-                targetSha = leaf.getObjectId();
-                if (targetSha == null) {
-                    throw new IOException("Reference cache HEAD does not resolve to a commit: " + cacheHead);
-                }
-            }
-            log.debug("cloneWithReference: cache HEAD resolved to {} @ {} in {} ms", targetRefName, targetSha.name(), elapsedMs(stepStart));
-
-            stepStart = System.nanoTime();
-            Repository tempRepo = initializedGit.getRepository();
-            RefUpdate refUpdate = tempRepo.updateRef(targetRefName);
-            refUpdate.setNewObjectId(targetSha);
-            refUpdate.setForceUpdate(true);
-            refUpdate.update();
-            RefUpdate headUpdate = tempRepo.updateRef(Constants.HEAD);
-            headUpdate.link(targetRefName);
-            log.debug("cloneWithReference: local ref {} installed in {} ms", targetRefName, elapsedMs(stepStart));
-
-            stepStart = System.nanoTime();
-            initializedGit.checkout()
-                    .setForced(true)
-                    .setName(targetRefName)
-                    .call();
-            log.debug("cloneWithReference: checkout {} done in {} ms", targetRefName, elapsedMs(stepStart));
             return initializedGit;
-        } catch (Exception ex) {
+        } catch (IOException ex) {
             initializedGit.close();
             throw ex;
         }
     }
 
     /**
-     * Opens the cache repository read-only. Caller must close.
+     * Installs the branch the cache's {@code HEAD} points at as local ref in {@code targetGit}, points HEAD at it
+     * symbolically and checks it out. Used for worktrees that do not have a commit checked out yet.
      */
-    private Repository openCacheRepository() throws IOException {
-        return new FileRepositoryBuilder()
-                .setGitDir(referenceCacheDir)
-                .setMustExist(true)
-                .build();
+    private void checkoutCacheHead(Git targetGit) throws IOException, GitAPIException {
+        long stepStart = System.nanoTime();
+        Ref cacheHead = readCacheHead();
+        String targetRefName = cacheHead.getName();
+        ObjectId targetSha = cacheHead.getObjectId();
+        log.debug("checkoutCacheHead: cache HEAD resolved to {} @ {} in {} ms", targetRefName, targetSha.name(), elapsedMs(stepStart));
+
+        stepStart = System.nanoTime();
+        Repository targetRepo = targetGit.getRepository();
+        RefUpdate refUpdate = targetRepo.updateRef(targetRefName);
+        refUpdate.setNewObjectId(targetSha);
+        refUpdate.setForceUpdate(true);
+        refUpdate.update();
+        RefUpdate headUpdate = targetRepo.updateRef(Constants.HEAD);
+        headUpdate.link(targetRefName);
+        log.debug("checkoutCacheHead: local ref {} installed in {} ms", targetRefName, elapsedMs(stepStart));
+
+        stepStart = System.nanoTime();
+        targetGit.checkout()
+                .setForced(true)
+                .setName(targetRefName)
+                .call();
+        recordPhase("checkout", stepStart);
+        log.debug("checkoutCacheHead: checkout {} done in {} ms", targetRefName, elapsedMs(stepStart));
+    }
+
+    /**
+     * Reads the ref the cache's symbolic {@code HEAD} points at, e.g. {@code refs/heads/master}.
+     */
+    private Ref readCacheHead() throws IOException {
+        try (CacheRepositoryGeneration cacheRepo = acquireCacheRepository()) {
+            Ref cacheHead = cacheRepo.exactRef(Constants.HEAD);
+            if (cacheHead == null) {
+                throw new IOException("Reference cache " + referenceCacheDir + " has no HEAD");
+            }
+            Ref leaf = cacheHead.getLeaf();
+            if (leaf.getObjectId() == null) {
+                throw new IOException("Reference cache HEAD does not resolve to a commit: " + cacheHead);
+            }
+            return leaf;
+        }
+    }
+
+    /**
+     * Takes over a worktree leased from {@link #worktreePool}. A freshly created worktree gets the cache's
+     * {@code HEAD} branch checked out like in {@link #cloneWithReference(File)}; a reused worktree is moved to
+     * the cache's {@code HEAD} commit, which only touches files that changed since its previous lease.
+     */
+    private void usePooledWorktree(MessageTypeWorktreePool.PooledWorktree worktree) {
+        this.pooledWorktree = worktree;
+        this.git = worktree.git();
+        this.gitRepoPath = worktree.directory();
+        try {
+            if (resolveHead() == null) {
+                checkoutCacheHead(git);
+            } else {
+                checkoutCommit(readCacheHead().getObjectId());
+            }
+        } catch (IOException | GitAPIException | RuntimeException e) {
+            close();
+            throw MessageTypeRepoException.cloneFailed(gitUri, e);
+        }
+    }
+
+    /**
+     * Worktree-free mode: opens the cache repository for the lifetime of this instance and starts out at the
+     * commit its {@code HEAD} resolves to, matching what {@link #cloneWithReference(File)} would check out.
+     */
+    private void openCacheForTreeReads() {
+        try {
+            cacheRepository = acquireCacheRepository();
+            Ref cacheHead = cacheRepository.exactRef(Constants.HEAD);
+            if (cacheHead == null || cacheHead.getLeaf().getObjectId() == null) {
+                throw new IOException("Reference cache " + referenceCacheDir + " HEAD does not resolve to a commit");
+            }
+            treeCommit = cacheHead.getLeaf().getObjectId();
+        } catch (IOException e) {
+            close();
+            throw MessageTypeRepoException.cloneFailed(gitUri, e);
+        }
+    }
+
+    /**
+     * Borrows the current generation of the cache repository from {@link #cacheRepositorySource}, or opens the
+     * cache repository read-only if there is none. Caller must close.
+     */
+    private CacheRepositoryGeneration acquireCacheRepository() throws IOException {
+        if (cacheRepositorySource != null) {
+            Optional<CacheRepositoryGeneration> shared = cacheRepositorySource.get();
+            if (shared.isPresent()) {
+                return shared.get();
+            }
+        }
+        return CacheRepositoryGeneration.open(referenceCacheDir, 0);
     }
 
     private Stream<File> getSystemDirs() {
@@ -0,0 +1,134 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits how many {@link MessageTypeRepository} instances are in use at the same time.
+ * <p>
+ * {@link MessageTypeRepositoryFactory#cloneRepository(String)} acquires a permit before provisioning a repository and
+ * the repository releases it on {@link MessageTypeRepository#close()}, so the limit covers worktrees, checkouts and
+ * schema parsing alike. Requests beyond the limit queue in arrival order for at most
+ * {@link MessageTypeRepositoryBulkheadProperties#getMaxWaitMillis()}; when the queue is full or the wait times out,
+ * a {@link MessageTypeRepositoryBusyException} is thrown instead of letting a burst slow down every request.
+ */
+@Component
+@Slf4j
+public class MessageTypeRepositoryBulkhead {
+
+    static final String QUEUE_DEPTH_GAUGE_NAME = "messagetyperepositorybulkhead.queue.depth";
+    static final String ACTIVE_GAUGE_NAME = "messagetyperepositorybulkhead.active";
+    static final String WAIT_TIMER_NAME = "messagetyperepositorybulkhead.wait.time";
+    static final String REJECTION_COUNTER_NAME = "messagetyperepositorybulkhead.rejections";
+
+    private final MessageTypeRepositoryBulkheadProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    public MessageTypeRepositoryBulkhead(MessageTypeRepositoryBulkheadProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.permits = new Semaphore(Math.max(1, properties.getMaxConcurrentRepositories()), true);
+        Gauge.builder(QUEUE_DEPTH_GAUGE_NAME, waiting, AtomicInteger::get)
+                .description("Number of requests waiting for a message type repository")
+                .register(meterRegistry);
+        Gauge.builder(ACTIVE_GAUGE_NAME, active, AtomicInteger::get)
+                .description("Number of message type repositories in use")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Acquires a permit for a repository of {@code gitUri}, waiting in the queue if none is available.
+     *
+     * @return the permit, to be closed once the repository is not used anymore
+     * @throws MessageTypeRepositoryBusyException if the queue is full or no permit became available in time
+     */
+    Permit acquire(String gitUri) {
+        if (!properties.isEnabled()) {
+            return new Permit(false);
+        }
+        long startNanos = System.nanoTime();
+        try {
+            // Timed tryAcquire honours the fair ordering, so a free permit is not taken away from a queued request
+            if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return acquired(startNanos);
+            }
+            // Take the queue slot before checking the bound, so that concurrent callers cannot all pass the check
+            if (waiting.incrementAndGet() > properties.getMaxQueueSize()) {
+                waiting.decrementAndGet();
+                throw rejected(gitUri, "queue-full", startNanos,
+                        MessageTypeRepositoryBusyException.queueFull(gitUri, properties.getMaxQueueSize()));
+            }
+            try {
+                if (permits.tryAcquire(properties.getMaxWaitMillis(), TimeUnit.MILLISECONDS)) {
+                    return acquired(startNanos);
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+            throw rejected(gitUri, "timeout", startNanos,
+                    MessageTypeRepositoryBusyException.waitTimedOut(gitUri, properties.getMaxWaitMillis()));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw MessageTypeRepoException.schemaLoadingInterrupted(gitUri, ex);
+        }
+    }
+
+    private Permit acquired(long startNanos) {
+        recordWait("acquired", startNanos);
+        active.incrementAndGet();
+        return new Permit(true);
+    }
+
+    private MessageTypeRepositoryBusyException rejected(String gitUri, String reason, long startNanos,
+                                                        MessageTypeRepositoryBusyException exception) {
+        recordWait("rejected", startNanos);
+        Counter.builder(REJECTION_COUNTER_NAME)
+                .description("Number of requests for a message type repository rejected by the bulkhead")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.warn("Rejected request for message type repository {} ({}, {} waiting, {} active)",
+                gitUri, reason, waiting.get(), active.get());
+        return exception;
+    }
+
+    private void recordWait(String outcome, long startNanos) {
+        Timer.builder(WAIT_TIMER_NAME)
+                .description("Time a request waited for a message type repository")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A permit held by one {@link MessageTypeRepository}. Closing it more than once has no effect.
+     */
+    final class Permit implements AutoCloseable {
+
+        private final AtomicBoolean held;
+
+        private Permit(boolean held) {
+            this.held = new AtomicBoolean(held);
+        }
+
+        @Override
+        public void close() {
+            if (held.compareAndSet(true, false)) {
+                active.decrementAndGet();
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "messages.repository-bulkhead")
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageTypeRepositoryBulkheadProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of message type repositories (worktrees, checkouts and schema parsing) in use at the same time,
+     * across all registries.
+     */
+    private int maxConcurrentRepositories = 16;
+
+    /**
+     * Maximum number of requests waiting for a repository once {@link #maxConcurrentRepositories} is reached. Further
+     * requests are rejected immediately.
+     */
+    private int maxQueueSize = 64;
+
+    /**
+     * How long a queued request waits for a repository before it is rejected.
+     */
+    private long maxWaitMillis = 30_000L;
+}
@@ -0,0 +1,22 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+/**
+ * Thrown when {@link MessageTypeRepositoryBulkhead} rejects a request for a message type repository because all
+ * permits are in use and the wait queue is full or the wait timed out. The request may be retried later.
+ */
+public class MessageTypeRepositoryBusyException extends RuntimeException {
+
+    private MessageTypeRepositoryBusyException(String message) {
+        super(message);
+    }
+
+    public static MessageTypeRepositoryBusyException queueFull(String gitUri, int maxQueueSize) {
+        return new MessageTypeRepositoryBusyException(
+                "Too many requests waiting for message type repository %s (queue size %d)".formatted(gitUri, maxQueueSize));
+    }
+
+    public static MessageTypeRepositoryBusyException waitTimedOut(String gitUri, long maxWaitMillis) {
+        return new MessageTypeRepositoryBusyException(
+                "Timed out after %d ms waiting for message type repository %s".formatted(maxWaitMillis, gitUri));
+    }
+}
@@ -0,0 +1,8 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+/**
+ * Published by {@link MessageTypeRepositoryReferenceCache} when the cache entry of the admitted repository
+ * {@code gitUri} is evicted, right before its mirror is deleted.
+ */
+public record MessageTypeRepositoryCacheEvictedEvent(String gitUri) {
+}
@@ -24,4 +24,72 @@ public class MessageTypeRepositoryCacheProperties {
      * a previous successful refresh is a no-op.
      */
     private long refreshDebounceMillis = 5_000L;
+
+    /**
+     * Maximum number of repositories refreshed at the same time by a full cache refresh (on startup and on the
+     * refresh cron). Refreshes of the same repository are always serialised.
+     */
+    private int refreshParallelism = 4;
+
+    /**
+     * How long a push notification for a repository (see
+     * {@link MessageTypeRepositoryReferenceCache#onPushNotification(String)}) keeps the per-request eager refresh
+     * of branch-only uploads switched off. While push notifications for a repository arrive and the refreshes they
+     * trigger succeed, the cache is kept fresh by them and branch-only uploads no longer pay a synchronous upstream
+     * fetch. Once no notification arrived within this window the eager refresh is used again.
+     */
+    private long pushNotificationHealthWindowMillis = 24L * 60 * 60 * 1000;
+
+    /**
+     * Age of the last successful refresh of a cache entry after which its health contributor (see
+     * {@link ReferenceCacheHealthIndicator}) reports the entry as {@link ReferenceCacheHealthIndicator#STALE}. Should be comfortably longer
+     * than the interval of {@link #refreshCron}.
+     */
+    private long healthStaleAfterMillis = 2L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Resolve schemas straight from the cached bare repository instead of provisioning a per-request worktree.
+     * Descriptors are read from the cache's object database at the requested commit and only the Avro IDL files
+     * of the requested message type are written to a scratch directory for parsing. Applies to cache-backed
+     * repositories only; requests for repositories without a cache entry still use a direct shallow clone.
+     */
+    private boolean worktreeFree = false;
+
+    /**
+     * Clone mirrors with only the history of the last this many days ({@code --shallow-since}) instead of the full
+     * history. Requested commits older than that are fetched into the mirror on demand. {@code 0} clones the full
+     * history.
+     */
+    private long mirrorShallowSinceDays = 0;
+
+    /**
+     * Local or shared directory for git bundle snapshots of the cache entries. When set, a full refresh exports a
+     * bundle of every entry and missing entries are seeded from their bundle before the delta is fetched from
+     * upstream, which speeds up the startup refresh of new instances. Not supported for shallow mirrors.
+     */
+    private String bundleDirectory;
+
+    /**
+     * Minimum age of a bundle before a full refresh replaces it with a new export.
+     */
+    private long bundleExportIntervalMillis = 6L * 60 * 60 * 1000;
+
+    /**
+     * Admit registry repositories that are not listed under {@code messages.repositories} into the cache once they
+     * have been requested {@link #unconfiguredAdmissionThreshold} times. Admitted repositories are cloned without
+     * credentials, refreshed like configured ones and evicted least-recently-used first when their mirrors exceed
+     * {@link #unconfiguredDiskBudgetBytes}.
+     */
+    private boolean admitUnconfiguredRepositories = false;
+
+    /**
+     * Number of requests for an unconfigured repository after which it is admitted into the cache.
+     */
+    private int unconfiguredAdmissionThreshold = 3;
+
+    /**
+     * Upper bound for the summed on-disk size of the mirrors of admitted (unconfigured) repositories. Mirrors of
+     * configured repositories do not count towards and are never evicted by this budget.
+     */
+    private long unconfiguredDiskBudgetBytes = 2L * 1024 * 1024 * 1024;
 }
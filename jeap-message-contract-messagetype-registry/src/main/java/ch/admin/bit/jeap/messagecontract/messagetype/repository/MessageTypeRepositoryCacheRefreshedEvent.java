@@ -0,0 +1,10 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import java.io.File;
+
+/**
+ * Published by {@link MessageTypeRepositoryReferenceCache} after the cache entry of {@code gitUri} was successfully
+ * refreshed, i.e. after the initial mirror clone or an incremental fetch. {@code cacheDir} is the mirror of the entry.
+ */
+public record MessageTypeRepositoryCacheRefreshedEvent(String gitUri, File cacheDir) {
+}
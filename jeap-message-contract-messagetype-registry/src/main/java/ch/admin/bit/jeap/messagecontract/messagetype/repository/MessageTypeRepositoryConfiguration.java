@@ -4,7 +4,9 @@ import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.health.contributor.CompositeHealthContributor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -12,7 +14,9 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @AutoConfiguration
 @ComponentScan
 @EnableScheduling
-@EnableConfigurationProperties({MessageTypeRepositoryProperties.class, MessageTypeRepositoryCacheProperties.class})
+@EnableConfigurationProperties({MessageTypeRepositoryProperties.class, MessageTypeRepositoryCacheProperties.class,
+        MessageTypeSchemaCacheProperties.class, MessageTypeWorktreePoolProperties.class,
+        MessageTypeSchemaPrecompilationProperties.class, MessageTypeRepositoryBulkheadProperties.class})
 public class MessageTypeRepositoryConfiguration {
 
     @Bean
@@ -20,4 +24,17 @@ public class MessageTypeRepositoryConfiguration {
     MeterRegistry meterRegistry() {
         return new SimpleMeterRegistry();
     }
+
+    /**
+     * Registered as health contributor {@code messageTypeRepositoryCache}, with one child per configured repository.
+     * Stale entries are reported as {@link ReferenceCacheHealthIndicator#STALE}, which does not fail the liveness or
+     * readiness probes.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "messages.repository-cache", name = "enabled", matchIfMissing = true)
+    CompositeHealthContributor messageTypeRepositoryCacheHealthContributor(MessageTypeRepositoryReferenceCache referenceCache,
+                                                                           MessageTypeRepositoryProperties repositoryProperties,
+                                                                           MessageTypeRepositoryCacheProperties cacheProperties) {
+        return ReferenceCacheHealthIndicator.forRepositories(referenceCache, repositoryProperties, cacheProperties);
+    }
 }
@@ -1,5 +1,6 @@
 package ch.admin.bit.jeap.messagecontract.messagetype.repository;
 
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.github.GitHubAppCredentialsProviders;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.github.GitHubMessageTypeRepository;
 import io.micrometer.core.annotation.Timed;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -20,42 +21,120 @@ public class MessageTypeRepositoryFactory {
     private final MessageTypeRepositoryProperties properties;
     private final MeterRegistry meterRegistry;
     private final MessageTypeRepositoryReferenceCache referenceCache;
+    private final MessageTypeWorktreePool worktreePool;
+    private final SchemaImportCache schemaImportCache;
+    private final MessageTypeSchemaCache schemaCache;
+    private final GitHubAppCredentialsProviders credentialsProviders;
+    private final MessageTypeRepositoryBulkhead bulkhead;
 
     @Autowired
     public MessageTypeRepositoryFactory(MessageTypeRepositoryProperties properties,
                                         MeterRegistry meterRegistry,
-                                        MessageTypeRepositoryReferenceCache referenceCache) {
+                                        MessageTypeRepositoryReferenceCache referenceCache,
+                                        MessageTypeWorktreePool worktreePool,
+                                        SchemaImportCache schemaImportCache,
+                                        MessageTypeSchemaCache schemaCache,
+                                        GitHubAppCredentialsProviders credentialsProviders,
+                                        MessageTypeRepositoryBulkhead bulkhead) {
         this.properties = properties;
         this.meterRegistry = meterRegistry;
         this.referenceCache = referenceCache;
+        this.worktreePool = worktreePool;
+        this.schemaImportCache = schemaImportCache != null ? schemaImportCache :
+                new SchemaImportCache(new MessageTypeSchemaCacheProperties(), meterRegistry);
+        this.schemaCache = schemaCache;
+        this.credentialsProviders = credentialsProviders != null ? credentialsProviders :
+                new GitHubAppCredentialsProviders(meterRegistry);
+        this.bulkhead = bulkhead;
+    }
+
+    public MessageTypeRepositoryFactory(MessageTypeRepositoryProperties properties,
+                                        MeterRegistry meterRegistry,
+                                        MessageTypeRepositoryReferenceCache referenceCache) {
+        this(properties, meterRegistry, referenceCache, null, null, null, null, null);
     }
 
     public MessageTypeRepositoryFactory(MessageTypeRepositoryProperties properties, MeterRegistry meterRegistry) {
         this(properties, meterRegistry, null);
     }
 
+    /**
+     * Provisions a repository of {@code gitUri}. If a {@link MessageTypeRepositoryBulkhead} is wired, a permit is
+     * acquired first and held by the returned repository until it is closed.
+     *
+     * @throws MessageTypeRepositoryBusyException if the bulkhead rejects the request
+     */
     @Timed(value = "clonerepository.time", description = "Time taken to load message type schemas from the registry", histogram = true)
     public MessageTypeRepository cloneRepository(String gitUri) {
+        MessageTypeRepositoryBulkhead.Permit permit = bulkhead != null ? bulkhead.acquire(gitUri) : null;
+        try {
+            MessageTypeRepository messageTypeRepository = provisionRepository(gitUri);
+            messageTypeRepository.setBulkheadPermit(permit);
+            return messageTypeRepository;
+        } catch (RuntimeException | Error ex) {
+            if (permit != null) {
+                permit.close();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Provisions a repository of {@code gitUri} for background work without taking a {@link MessageTypeRepositoryBulkhead}
+     * permit, so that it never delays or rejects interactive requests. Callers bound their own concurrency, e.g.
+     * {@link MessageTypeSchemaPrecompiler} by {@link MessageTypeSchemaPrecompilationProperties#getParallelism()}.
+     */
+    MessageTypeRepository cloneRepositoryForBackgroundWork(String gitUri) {
+        return provisionRepository(gitUri);
+    }
+
+    private MessageTypeRepository provisionRepository(String gitUri) {
         long startNanos = System.nanoTime();
         MessageTypeRepository messageTypeRepository = new MessageTypeRepository(gitUri); // NOSONAR close is ensured by the method's client
         if (properties != null && properties.getRepositories() != null) {
             Optional<RepositoryProperties> knownRepository = properties.getRepositories().stream().filter(repository -> repository.getUri().equals(gitUri)).findFirst();
             if (knownRepository.isPresent() && GITHUB.equals(knownRepository.get().getType())) {
-                messageTypeRepository = new GitHubMessageTypeRepository(gitUri, knownRepository.get().getParameters(), meterRegistry);
+                messageTypeRepository = new GitHubMessageTypeRepository(gitUri, credentialsProviders.forRepository(knownRepository.get()));
             }
         }
+        messageTypeRepository.setSchemaImportCache(schemaImportCache);
+        messageTypeRepository.setSchemaCache(schemaCache);
+        messageTypeRepository.setMeterRegistry(meterRegistry);
         boolean cacheHit = false;
+        MessageTypeRepositoryReferenceCache.EntryLease entryLease = null;
         if (referenceCache != null) {
-            Optional<File> cacheRepoDir = referenceCache.getCacheRepoDir(gitUri);
+            // Lease the entry before looking it up, so that it cannot be evicted while this repository reads from it
+            entryLease = referenceCache.leaseEntry(gitUri).orElse(null);
+            Optional<File> cacheRepoDir = entryLease != null ? referenceCache.getCacheRepoDir(gitUri) : Optional.empty();
             if (cacheRepoDir.isPresent()) {
+                messageTypeRepository.setCacheEntryLease(entryLease);
                 messageTypeRepository.setReferenceCacheDir(cacheRepoDir.get());
-                messageTypeRepository.setCacheMissRefresh(() -> referenceCache.refreshOne(gitUri));
+                messageTypeRepository.setCacheRepositorySource(() -> referenceCache.acquireRepository(gitUri));
+                messageTypeRepository.setCacheMissRefresh(() -> referenceCache.refreshOnMiss(gitUri));
+                messageTypeRepository.setMissingCommitFetch(commitSha -> referenceCache.fetchCommit(gitUri, commitSha));
                 messageTypeRepository.setEagerCacheRefresh(() -> referenceCache.refreshIfStale(gitUri));
+                messageTypeRepository.setWorktreeFree(referenceCache.isWorktreeFree());
+                if (worktreePool != null && worktreePool.isEnabled()) {
+                    messageTypeRepository.setWorktreePool(worktreePool);
+                }
                 cacheHit = true;
+            } else {
+                if (entryLease != null) {
+                    entryLease.close();
+                }
+                referenceCache.considerForAdmission(gitUri);
+            }
+        }
+        try {
+            messageTypeRepository.cloneGitRepo();
+        } catch (RuntimeException | Error ex) {
+            if (cacheHit) {
+                entryLease.close();
             }
+            throw ex;
         }
-        messageTypeRepository.cloneGitRepo();
-        log.info("Cloned {} in {} ms (cacheHit={})", gitUri, elapsedMs(startNanos), cacheHit);
+        log.info("Cloned {} in {} ms (cacheHit={}, worktreeFree={})", gitUri, elapsedMs(startNanos), cacheHit,
+                cacheHit && referenceCache.isWorktreeFree());
         return messageTypeRepository;
     }
 }
@@ -1,23 +1,52 @@
 package ch.admin.bit.jeap.messagecontract.messagetype.repository;
 
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.github.GitHubAppCredentialsProvider;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.github.GitHubAppCredentialsProviders;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.TagOpt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static ch.admin.bit.jeap.messagecontract.messagetype.repository.Elapsed.elapsedMs;
@@ -34,59 +63,192 @@ import static ch.admin.bit.jeap.messagecontract.messagetype.repository.Elapsed.e
  * <p>
  * <b>Lifecycle.</b> {@link #refreshAll()} is invoked by
  * {@link MessageTypeRepositoryReferenceCacheRefresher} on application startup (because the container
- * filesystem is ephemeral) and on a configurable cron (default {@code 0 0 1 * * *}). Concurrent invocations
- * are serialised via {@link ReentrantLock} - {@link #refreshAll()} uses non-blocking
- * {@link ReentrantLock#tryLock() tryLock} so a scheduled tick overlapping the startup refresh is dropped,
- * while {@link #refreshOne(String)} uses blocking {@link ReentrantLock#lock() lock} so callers waiting on
- * a freshening side pick up the newly-fetched refs.
+ * filesystem is ephemeral) and on a configurable cron (default {@code 0 0 1 * * *}). {@link #refreshAll()}
+ * refreshes up to {@link MessageTypeRepositoryCacheProperties#getRefreshParallelism()} repositories at a time;
+ * an invocation overlapping a running one (e.g. a scheduled tick during the startup refresh) is dropped.
+ * Refreshes of the same repository are serialised via a {@link ReentrantLock} per URI, so a slow fetch of one
+ * registry never blocks a {@link #refreshOne(String)} for another. {@link #refreshOne(String)} waits for the
+ * lock so callers waiting on a freshening side pick up the newly-fetched refs. Time spent waiting for a lock is
+ * published as {@code messagetyperepositorycache.refresh.lockwait.time}, tagged by repository.
  * <p>
  * <b>Refresh semantics.</b> For each configured repository:
  * <ul>
  *   <li>If the cache directory passes the bare-repo sanity check (HEAD / objects / config present), a
  *       mirror-style fetch is run against it ({@code setRemoveDeletedRefs(true)} and
  *       {@code TagOpt.FETCH_TAGS}) so the cache tracks server-side deletions and tag updates.</li>
- *   <li>If the directory is missing or invalid, any leftover contents are removed and a fresh
- *       {@code clone --bare --mirror} is performed.</li>
+ *   <li>If the directory is missing or invalid, a fresh {@code clone --bare --mirror} is performed into a
+ *       {@code <sha256(uri)>.staging} sibling directory, which is then published by an atomic rename - readers
+ *       never see a half-cloned mirror. An invalid directory is renamed aside to {@code <sha256(uri)>.retired}
+ *       right before and deleted after the swap.</li>
  *   <li>Failures for a single repository are logged and swallowed - the cache is best-effort and a stale
  *       or missing entry just falls back to the existing direct-clone path in {@link MessageTypeRepository}.</li>
  * </ul>
  * <p>
+ * <b>Shallow mirrors.</b> With {@link MessageTypeRepositoryCacheProperties#getMirrorShallowSinceDays()} set, mirrors
+ * are cloned with {@code --shallow-since} instead of with their full history, which keeps cold-start clones small.
+ * A requested commit older than the shallow boundary is fetched on demand by {@link #fetchCommit(String, String)}.
+ * The duration of every clone, fetch and commit fetch is published as
+ * {@code messagetyperepositorycache.entry.refresh.time} (tagged by repository and operation) and the resulting size
+ * of the entry as {@code messagetyperepositorycache.entry.size}.
+ * <p>
+ * <b>Bundles.</b> With {@link MessageTypeRepositoryCacheProperties#getBundleDirectory()} set, every full refresh
+ * exports a git bundle of each entry (see {@link ReferenceCacheBundles}), and a missing entry - typically on the
+ * ephemeral filesystem of a freshly started instance - is seeded from its bundle so only the delta is fetched from
+ * upstream.
+ * <p>
  * <b>Stale-cache handling.</b> {@link #refreshOne(String)} is called both reactively
  * ({@link MessageTypeRepository#checkoutAt} on fetch/checkout failure for an unknown commit/branch) and
  * eagerly (before resolving a branch-only contract upload, so a moved branch tip is picked up).
  * {@code refreshOne} debounces calls per URI via
  * {@link MessageTypeRepositoryCacheProperties#getRefreshDebounceMillis()}: a batch of uploads pays at
- * most one upstream round-trip even though every branch request triggers it.
+ * most one upstream round-trip even though every branch request triggers it. Concurrent {@code refreshOne}
+ * calls for the same URI are coalesced into a single in-flight refresh: a caller joins the running refresh if
+ * its upstream fetch has not started yet or started after the caller asked, and only waits for the next one
+ * otherwise. Joined calls are counted as {@code messagetyperepositorycache.refresh.coalesced}.
+ * <p>
+ * <b>Push notifications.</b> {@link #onPushNotification(String)} refreshes an entry in the background when the
+ * upstream repository signals a push (e.g. through a webhook). While push-triggered refreshes for a repository
+ * succeed - i.e. the latest notification is younger than
+ * {@link MessageTypeRepositoryCacheProperties#getPushNotificationHealthWindowMillis()} and the refresh it triggered
+ * has completed - {@link #refreshIfStale(String)} skips the eager refresh for it. Received notifications are counted
+ * as {@code messagetyperepositorycache.pushnotifications}.
+ * <p>
+ * Every successful refresh of an entry publishes a {@link MessageTypeRepositoryCacheRefreshedEvent}.
+ * <p>
+ * <b>Shared repository handle.</b> The cache keeps one open {@link CacheRepositoryGeneration} per entry, which
+ * request threads borrow read-only via {@link #acquireRepository(String)} instead of opening the bare repository
+ * themselves. A successful refresh opens a new generation and swaps it in atomically; the previous generation is
+ * closed once its last borrower has released it. Since refs are only ever read from a generation's snapshot and a
+ * fetch only adds objects, readers never block on a refresh and never observe the intermediate ref state of a
+ * running fetch - the refresh lock only serialises writers.
  * <p>
- * GitHub-typed repositories use the same {@link GitHubAppCredentialsProvider} as the per-request clone path,
- * sharing the configured {@link MeterRegistry}.
+ * <b>Unconfigured repositories.</b> With
+ * {@link MessageTypeRepositoryCacheProperties#isAdmitUnconfiguredRepositories()}, a repository that is not configured
+ * but requested {@link MessageTypeRepositoryCacheProperties#getUnconfiguredAdmissionThreshold()} times (see
+ * {@link #considerForAdmission(String)}) is admitted: its mirror is cloned in the background and from then on it is
+ * cached and refreshed like a configured repository. Admitted mirrors are evicted least-recently-used first whenever
+ * their summed size exceeds {@link MessageTypeRepositoryCacheProperties#getUnconfiguredDiskBudgetBytes()}. Admissions
+ * and evictions are counted as {@code messagetyperepositorycache.admissions} and
+ * {@code messagetyperepositorycache.evictions}; the number and summed size of admitted mirrors are published as
+ * {@code messagetyperepositorycache.admitted.repositories} and {@code messagetyperepositorycache.admitted.size}.
+ * <p>
+ * <b>Metrics and health.</b> Lookups of the per-request clone path are counted as
+ * {@code messagetyperepositorycache.lookups} by repository and hit/miss, refreshes triggered by a ref missing from
+ * the cache as {@code messagetyperepositorycache.refresh.onmiss} and eager refreshes skipped by the debounce window or
+ * by push notifications as {@code messagetyperepositorycache.refresh.skipped}. The time since the last successful
+ * refresh of every entry is published as {@code messagetyperepositorycache.entry.refresh.age} and reported by
+ * {@link ReferenceCacheHealthIndicator} per configured repository.
+ * <p>
+ * GitHub-typed repositories use the same {@link GitHubAppCredentialsProvider} instance as the per-request clone
+ * path (see {@link GitHubAppCredentialsProviders}), so refreshes reuse its cached installation access token.
  */
 @Slf4j
 @Component
-public class MessageTypeRepositoryReferenceCache {
+public class MessageTypeRepositoryReferenceCache implements AutoCloseable {
+
+    static final String LOCK_WAIT_TIMER_NAME = "messagetyperepositorycache.refresh.lockwait.time";
+    static final String COALESCED_COUNTER_NAME = "messagetyperepositorycache.refresh.coalesced";
+    static final String PUSH_NOTIFICATION_COUNTER_NAME = "messagetyperepositorycache.pushnotifications";
+    static final String STAGING_SUFFIX = ".staging";
+    static final String RETIRED_SUFFIX = ".retired";
+    static final String ADMISSION_COUNTER_NAME = "messagetyperepositorycache.admissions";
+    static final String EVICTION_COUNTER_NAME = "messagetyperepositorycache.evictions";
+    static final String ENTRY_REFRESH_TIMER_NAME = "messagetyperepositorycache.entry.refresh.time";
+    static final String ENTRY_SIZE_GAUGE_NAME = "messagetyperepositorycache.entry.size";
+    static final String ENTRY_REFRESH_AGE_GAUGE_NAME = "messagetyperepositorycache.entry.refresh.age";
+    static final String LOOKUP_COUNTER_NAME = "messagetyperepositorycache.lookups";
+    static final String MISS_REFRESH_COUNTER_NAME = "messagetyperepositorycache.refresh.onmiss";
+    static final String SKIPPED_REFRESH_COUNTER_NAME = "messagetyperepositorycache.refresh.skipped";
+    static final String UNCONFIGURED_REPOSITORY_TAG = "unconfigured";
+    private static final int MAXIMUM_TRACKED_UNCONFIGURED_REPOSITORIES = 1024;
 
     private final MessageTypeRepositoryCacheProperties cacheProperties;
     private final MessageTypeRepositoryProperties repositoryProperties;
     private final MeterRegistry meterRegistry;
-    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final ApplicationEventPublisher eventPublisher;
+    private final GitHubAppCredentialsProviders credentialsProviders;
+    /**
+     * One lock per repository URI, serialising refreshes of the same cache entry.
+     */
+    private final ConcurrentHashMap<String, ReentrantLock> refreshLocks = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshAllRunning = new AtomicBoolean();
+    /**
+     * The {@link #refreshOne(String)} refresh currently running or waiting for its lock, per URI.
+     */
+    private final ConcurrentHashMap<String, InFlightRefresh> inFlightRefreshes = new ConcurrentHashMap<>();
     /**
      * Tracks the {@link System#nanoTime()} at which the last successful refresh completed for each URI.
      * Used by {@link #refreshOne(String)} to debounce concurrent eager refreshes.
      */
     private final ConcurrentHashMap<String, Long> lastRefreshNanos = new ConcurrentHashMap<>();
+    /**
+     * Tracks the {@link System#nanoTime()} at which the last push notification was received for each URI.
+     */
+    private final ConcurrentHashMap<String, Long> lastPushNotificationNanos = new ConcurrentHashMap<>();
+    /**
+     * The current open repository generation per URI.
+     */
+    private final ConcurrentHashMap<String, CacheRepositoryGeneration> repositoryGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong generationCounter = new AtomicLong();
+    /**
+     * Unconfigured repositories admitted into the cache, with the {@link System#nanoTime()} of their last use.
+     */
+    private final ConcurrentHashMap<String, Long> admittedRepositories = new ConcurrentHashMap<>();
+    /**
+     * Requests per unconfigured repository that has not been admitted (yet).
+     */
+    private final Cache<String, AtomicInteger> unconfiguredRequests = Caffeine.newBuilder()
+            .maximumSize(MAXIMUM_TRACKED_UNCONFIGURED_REPOSITORIES)
+            .expireAfterAccess(Duration.ofDays(1))
+            .build();
+    private final AtomicLong admittedSizeBytes = new AtomicLong();
+    /**
+     * On-disk size of each cache entry after its last refresh.
+     */
+    private final ConcurrentHashMap<String, Long> entrySizeBytes = new ConcurrentHashMap<>();
+    /**
+     * Number of open {@link EntryLease leases} per URI, see {@link #leaseEntry(String)}. Updated with
+     * {@link ConcurrentHashMap#compute} only, so that leasing and evicting an entry are mutually exclusive.
+     */
+    private final ConcurrentHashMap<String, Integer> entryLeases = new ConcurrentHashMap<>();
+    private final ReferenceCacheBundles bundles;
 
+    @Autowired
     public MessageTypeRepositoryReferenceCache(MessageTypeRepositoryCacheProperties cacheProperties,
                                                MessageTypeRepositoryProperties repositoryProperties,
-                                               MeterRegistry meterRegistry) {
+                                               MeterRegistry meterRegistry,
+                                               ApplicationEventPublisher eventPublisher,
+                                               GitHubAppCredentialsProviders credentialsProviders) {
         this.cacheProperties = cacheProperties;
         this.repositoryProperties = repositoryProperties;
         this.meterRegistry = meterRegistry;
+        this.eventPublisher = eventPublisher;
+        this.credentialsProviders = credentialsProviders != null ? credentialsProviders :
+                new GitHubAppCredentialsProviders(meterRegistry);
+        this.bundles = new ReferenceCacheBundles(cacheProperties, meterRegistry);
+        Gauge.builder("messagetyperepositorycache.admitted.repositories", admittedRepositories, Map::size)
+                .description("Unconfigured repositories currently admitted into the reference repository cache")
+                .register(meterRegistry);
+        Gauge.builder("messagetyperepositorycache.admitted.size", admittedSizeBytes, AtomicLong::get)
+                .description("Summed on-disk size of the mirrors of admitted unconfigured repositories")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public MessageTypeRepositoryReferenceCache(MessageTypeRepositoryCacheProperties cacheProperties,
+                                               MessageTypeRepositoryProperties repositoryProperties,
+                                               MeterRegistry meterRegistry) {
+        this(cacheProperties, repositoryProperties, meterRegistry, null, null);
     }
 
     public boolean isEnabled() {
         return cacheProperties.isEnabled();
     }
 
+    public boolean isWorktreeFree() {
+        return cacheProperties.isWorktreeFree();
+    }
+
     /**
      * Returns the cached bare repository directory for {@code gitUri}, if the cache is enabled and the
      * entry passes the bare-repo sanity check. Callers (typically {@link MessageTypeRepositoryFactory})
@@ -101,29 +263,227 @@ public class MessageTypeRepositoryReferenceCache {
         if (!isEnabled()) {
             return Optional.empty();
         }
+        if (findRepository(gitUri).isEmpty()) {
+            recordLookup(UNCONFIGURED_REPOSITORY_TAG, false);
+            return Optional.empty();
+        }
         File cacheDir = cacheDirFor(gitUri);
         if (!isValidBareRepo(cacheDir)) {
+            recordLookup(gitUri, false);
             return Optional.empty();
         }
+        admittedRepositories.computeIfPresent(gitUri, (_, _) -> System.nanoTime());
+        recordLookup(gitUri, true);
         return Optional.of(cacheDir);
     }
 
     /**
-     * Refreshes every configured cache entry, sequentially. No-op when the cache is disabled or no
-     * repositories are configured. Uses non-blocking locking so that an overlap between the startup
-     * refresh and the scheduled cron tick is harmless - the later caller just returns.
+     * Counts a cache lookup by the per-request clone path. Lookups of repositories that are not cached are counted
+     * under a single {@value #UNCONFIGURED_REPOSITORY_TAG} tag, so arbitrary request URIs do not create new meters.
+     */
+    private void recordLookup(String repositoryTag, boolean hit) {
+        Counter.builder(LOOKUP_COUNTER_NAME)
+                .description("Reference repository cache lookups of the per-request clone path")
+                .tag("repository", repositoryTag)
+                .tag("result", hit ? "hit" : "miss")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Records a request for {@code gitUri} that could not be served from the cache and, if it is an unconfigured
+     * repository requested often enough, admits it: its mirror is cloned in the background and used by subsequent
+     * requests. No-op unless {@link MessageTypeRepositoryCacheProperties#isAdmitUnconfiguredRepositories()} is set.
+     */
+    public void considerForAdmission(String gitUri) {
+        if (!isEnabled() || !cacheProperties.isAdmitUnconfiguredRepositories() || findRepository(gitUri).isPresent()) {
+            return;
+        }
+        int requests = unconfiguredRequests.get(gitUri, _ -> new AtomicInteger()).incrementAndGet();
+        if (requests < cacheProperties.getUnconfiguredAdmissionThreshold()
+                || admittedRepositories.putIfAbsent(gitUri, System.nanoTime()) != null) {
+            return;
+        }
+        unconfiguredRequests.invalidate(gitUri);
+        meterRegistry.counter(ADMISSION_COUNTER_NAME).increment();
+        log.info("considerForAdmission: admitting unconfigured repository {} after {} request(s)", gitUri, requests);
+        Thread.ofVirtual()
+                .name("messagetype-cache-admission")
+                .start(() -> admit(gitUri));
+    }
+
+    private void admit(String gitUri) {
+        refreshOne(gitUri);
+        if (!isValidBareRepo(cacheDirFor(gitUri))) {
+            log.warn("admit: mirror clone of {} failed; withdrawing admission", gitUri);
+            admittedRepositories.remove(gitUri);
+            return;
+        }
+        enforceDiskBudget();
+    }
+
+    /**
+     * Evicts admitted repositories, least recently used first, until the summed size of their mirrors is within
+     * {@link MessageTypeRepositoryCacheProperties#getUnconfiguredDiskBudgetBytes()}.
+     */
+    void enforceDiskBudget() {
+        List<Map.Entry<String, Long>> leastRecentlyUsedFirst = admittedRepositories.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                .sorted(Map.Entry.comparingByValue((a, b) -> Long.compare(a - b, 0)))
+                .toList();
+        Map<String, Long> sizes = new HashMap<>();
+        long totalBytes = 0;
+        for (Map.Entry<String, Long> entry : leastRecentlyUsedFirst) {
+            long size = sizeOf(cacheDirFor(entry.getKey()));
+            sizes.put(entry.getKey(), size);
+            totalBytes += size;
+        }
+        for (Map.Entry<String, Long> entry : leastRecentlyUsedFirst) {
+            if (totalBytes <= cacheProperties.getUnconfiguredDiskBudgetBytes()) {
+                break;
+            }
+            if (evict(entry.getKey())) {
+                totalBytes -= sizes.get(entry.getKey());
+            }
+        }
+        admittedSizeBytes.set(totalBytes);
+    }
+
+    /**
+     * Evicts the admitted repository {@code gitUri}, unless its entry is leased: open {@link MessageTypeRepository}
+     * instances and their worktrees read objects from the mirror (through alternates), so it is only deleted once
+     * none is left. A skipped entry is evicted by a later {@link #enforceDiskBudget()}. Idle pooled worktrees of the
+     * entry are purged through a {@link MessageTypeRepositoryCacheEvictedEvent} before the mirror is deleted. If the
+     * mirror cannot be moved aside, the entry is admitted again so that a later {@link #enforceDiskBudget()} retries.
+     */
+    private boolean evict(String gitUri) {
+        ReentrantLock lock = lockRefresh(gitUri);
+        try {
+            AtomicBoolean leased = new AtomicBoolean();
+            AtomicReference<Long> lastUse = new AtomicReference<>();
+            entryLeases.compute(gitUri, (_, leases) -> {
+                if (leases != null && leases > 0) {
+                    leased.set(true);
+                } else {
+                    lastUse.set(admittedRepositories.remove(gitUri));
+                }
+                return leases;
+            });
+            if (leased.get()) {
+                log.info("evict: skipping eviction of {}, its reference repository cache entry is in use", gitUri);
+                return false;
+            }
+            if (lastUse.get() == null) {
+                return false;
+            }
+            if (eventPublisher != null) {
+                eventPublisher.publishEvent(new MessageTypeRepositoryCacheEvictedEvent(gitUri));
+            }
+            retireGeneration(gitUri);
+            entrySizeBytes.remove(gitUri);
+            File cacheDir = cacheDirFor(gitUri);
+            File retiredDir = siblingDir(cacheDir, RETIRED_SUFFIX);
+            if (cacheDir.exists()) {
+                try {
+                    FileUtils.deleteDirectory(retiredDir);
+                    moveAside(cacheDir, retiredDir);
+                } catch (IOException ex) {
+                    log.warn("evict: failed to move the mirror of {} aside, keeping it admitted", gitUri, ex);
+                    admittedRepositories.putIfAbsent(gitUri, lastUse.get());
+                    return false;
+                }
+                FileUtils.deleteQuietly(retiredDir);
+            }
+            meterRegistry.counter(EVICTION_COUNTER_NAME).increment();
+            log.info("evict: evicted admitted repository {} from the reference repository cache", gitUri);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Leases the cache entry of {@code gitUri} for a {@link MessageTypeRepository} reading from it. An admitted entry
+     * is not evicted while leased. Returns {@link Optional#empty()} if {@code gitUri} is not (or no longer) cached.
+     */
+    Optional<EntryLease> leaseEntry(String gitUri) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        AtomicBoolean cached = new AtomicBoolean();
+        entryLeases.compute(gitUri, (_, leases) -> {
+            cached.set(findRepository(gitUri).isPresent());
+            return cached.get() ? (leases == null ? 1 : leases + 1) : leases;
+        });
+        return cached.get() ? Optional.of(new EntryLease(gitUri)) : Optional.empty();
+    }
+
+    private static long sizeOf(File directory) {
+        try {
+            return directory.isDirectory() ? FileUtils.sizeOfDirectory(directory) : 0;
+        } catch (UncheckedIOException | IllegalArgumentException ex) {
+            log.debug("Failed to determine the size of {}", directory, ex);
+            return 0;
+        }
+    }
+
+    /**
+     * Borrows the current {@link CacheRepositoryGeneration} of the cache entry of {@code gitUri}, opening it if the
+     * entry has not been opened since startup. The caller must {@link CacheRepositoryGeneration#close() close} the
+     * returned generation when done; it stays usable even if a refresh swaps in a newer generation meanwhile.
+     * <p>
+     * Returns {@link Optional#empty()} in the same cases as {@link #getCacheRepoDir(String)}, or if the entry cannot
+     * be opened.
+     */
+    Optional<CacheRepositoryGeneration> acquireRepository(String gitUri) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        while (true) {
+            CacheRepositoryGeneration current = repositoryGenerations.get(gitUri);
+            if (current == null) {
+                File cacheDir = cacheDirFor(gitUri);
+                if (findRepository(gitUri).isEmpty() || !isValidBareRepo(cacheDir)) {
+                    return Optional.empty();
+                }
+                current = repositoryGenerations.computeIfAbsent(gitUri, _ -> openGeneration(gitUri, cacheDir));
+                if (current == null) {
+                    return Optional.empty();
+                }
+            }
+            if (current.tryRetain()) {
+                return Optional.of(current);
+            }
+            // Retired by a concurrent refresh; its successor is already installed or about to be opened lazily
+            repositoryGenerations.remove(gitUri, current);
+        }
+    }
+
+    /**
+     * Releases the cache's use of every open repository generation.
+     */
+    @Override
+    public void close() {
+        repositoryGenerations.keySet().forEach(this::retireGeneration);
+    }
+
+    /**
+     * Refreshes every configured cache entry, up to {@link MessageTypeRepositoryCacheProperties#getRefreshParallelism()}
+     * at a time, and returns once all of them are done. No-op when the cache is disabled or no repositories are
+     * configured. An overlap between the startup refresh and the scheduled cron tick is harmless - the later caller
+     * just returns.
      */
     public void refreshAll() {
         if (!isEnabled()) {
             log.debug("Reference repository cache disabled; skipping refresh");
             return;
         }
-        List<RepositoryProperties> repositories = repositoryProperties.getRepositories();
-        if (repositories == null || repositories.isEmpty()) {
+        List<RepositoryProperties> repositories = cachedRepositories();
+        if (repositories.isEmpty()) {
             log.debug("No repositories configured; skipping cache refresh");
             return;
         }
-        if (!refreshLock.tryLock()) {
+        if (!refreshAllRunning.compareAndSet(false, true)) {
             log.info("refreshAll: refresh already in progress; skipping");
             return;
         }
@@ -134,13 +494,45 @@ public class MessageTypeRepositoryReferenceCache {
                 log.error("Failed to create reference repository cache root directory {}", cacheRoot);
                 return;
             }
-            log.info("refreshAll: starting refresh of {} repositor(y/ies)", repositories.size());
-            for (RepositoryProperties repo : repositories) {
-                refresh(repo);
+            int parallelism = Math.max(1, cacheProperties.getRefreshParallelism());
+            log.info("refreshAll: starting refresh of {} repositor(y/ies), parallelism={}", repositories.size(), parallelism);
+            Semaphore permits = new Semaphore(parallelism);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (RepositoryProperties repo : repositories) {
+                    executor.execute(() -> refreshWithPermit(repo, permits));
+                }
+            }
+            if (!admittedRepositories.isEmpty()) {
+                enforceDiskBudget();
+            }
+            if (bundles.isEnabled()) {
+                exportBundles(repositories);
             }
             log.info("refreshAll: completed in {} ms", elapsedMs(startNanos));
         } finally {
-            refreshLock.unlock();
+            refreshAllRunning.set(false);
+        }
+    }
+
+    private void refreshWithPermit(RepositoryProperties repo, Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            log.warn("refreshAll: interrupted before refreshing {}", repo.getUri());
+            return;
+        }
+        try {
+            ReentrantLock lock = lockRefresh(repo.getUri());
+            try {
+                if (findRepository(repo.getUri()).isPresent()) { // may have been evicted meanwhile
+                    refresh(repo);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            permits.release();
         }
     }
 
@@ -148,7 +540,8 @@ public class MessageTypeRepositoryReferenceCache {
      * Refreshes a single configured cache entry, unconditionally. Used by
      * {@link MessageTypeRepository#checkoutAt}'s stale-cache retry when a requested commit/branch isn't in
      * the cache - the caller already paid the cost of a failed lookup, so we must hit upstream regardless
-     * of the debounce window. Blocks on {@link #refreshLock} so only one upstream fetch runs at a time.
+     * of the debounce window. Concurrent calls for the same URI share one upstream fetch, and the call returns
+     * once a fetch that started after it was made has completed.
      * No-op when the cache is disabled or {@code gitUri} is not a configured repository.
      */
     public void refreshOne(String gitUri) {
@@ -166,46 +559,236 @@ public class MessageTypeRepositoryReferenceCache {
         refreshOne(gitUri, true);
     }
 
-    private void refreshOne(String gitUri, boolean respectDebounce) {
-        if (!isEnabled()) {
-            return;
+    /**
+     * Refreshes a single cache entry because a requested ref was not found in it, see
+     * {@link MessageTypeRepository#setCacheMissRefresh(Runnable)}. Like {@link #refreshOne(String)}, but counted
+     * as {@value #MISS_REFRESH_COUNTER_NAME}.
+     */
+    public void refreshOnMiss(String gitUri) {
+        if (isEnabled() && findRepository(gitUri).isPresent()) {
+            Counter.builder(MISS_REFRESH_COUNTER_NAME)
+                    .description("Reference repository cache refreshes triggered by a ref missing from the cache")
+                    .tag("repository", gitUri)
+                    .register(meterRegistry)
+                    .increment();
         }
-        List<RepositoryProperties> repositories = repositoryProperties.getRepositories();
-        if (repositories == null) {
-            return;
+        refreshOne(gitUri, false);
+    }
+
+    /**
+     * Time since the last successful refresh of the cache entry of {@code gitUri}, if it has been refreshed by this
+     * instance at all.
+     */
+    public Optional<Duration> lastRefreshAge(String gitUri) {
+        Long last = lastRefreshNanos.get(gitUri);
+        return last == null ? Optional.empty() : Optional.of(Duration.ofNanos(System.nanoTime() - last));
+    }
+
+    /**
+     * On-disk size of the cache entry of {@code gitUri} after its last refresh, if it has been refreshed.
+     */
+    public Optional<Long> entrySize(String gitUri) {
+        return Optional.ofNullable(entrySizeBytes.get(gitUri));
+    }
+
+    /**
+     * Signals that {@code gitUri} was pushed to upstream and refreshes its cache entry in the background.
+     * Notifications arriving while a refresh is in flight are coalesced with it (see {@link #refreshOne(String)}).
+     *
+     * @return {@code false} if the cache is disabled or {@code gitUri} is not a configured repository, in which case
+     * the notification is ignored
+     */
+    public boolean onPushNotification(String gitUri) {
+        if (!isEnabled() || findRepository(gitUri).isEmpty()) {
+            log.debug("onPushNotification: gitUri={} is not a cached repository; ignoring", gitUri);
+            return false;
+        }
+        lastPushNotificationNanos.put(gitUri, System.nanoTime());
+        meterRegistry.counter(PUSH_NOTIFICATION_COUNTER_NAME, "repository", gitUri).increment();
+        Thread.ofVirtual()
+                .name("messagetype-push-refresh")
+                .start(() -> refreshOne(gitUri));
+        log.info("onPushNotification: refreshing {} in the background", gitUri);
+        return true;
+    }
+
+    /**
+     * Whether the cache entry of {@code gitUri} is kept fresh by push notifications: the latest notification is
+     * within the health window and a refresh has completed since it was received.
+     */
+    boolean isPushDriven(String gitUri) {
+        Long lastPush = lastPushNotificationNanos.get(gitUri);
+        if (lastPush == null) {
+            return false;
         }
-        Optional<RepositoryProperties> match = repositories.stream()
+        long now = System.nanoTime();
+        long healthWindowNanos = cacheProperties.getPushNotificationHealthWindowMillis() * 1_000_000L;
+        Long lastRefresh = lastRefreshNanos.get(gitUri);
+        return now - lastPush < healthWindowNanos && lastRefresh != null && lastRefresh - lastPush >= 0;
+    }
+
+    private Optional<RepositoryProperties> findRepository(String gitUri) {
+        List<RepositoryProperties> repositories = repositoryProperties.getRepositories();
+        Optional<RepositoryProperties> configured = repositories == null ? Optional.empty() : repositories.stream()
                 .filter(r -> r.getUri().equals(gitUri))
                 .findFirst();
+        if (configured.isEmpty() && admittedRepositories.containsKey(gitUri)) {
+            return Optional.of(admittedRepository(gitUri));
+        }
+        return configured;
+    }
+
+    /**
+     * The configured repositories followed by the admitted ones.
+     */
+    private List<RepositoryProperties> cachedRepositories() {
+        List<RepositoryProperties> repositories = new ArrayList<>();
+        if (repositoryProperties.getRepositories() != null) {
+            repositories.addAll(repositoryProperties.getRepositories());
+        }
+        admittedRepositories.keySet().stream()
+                .filter(uri -> repositories.stream().noneMatch(r -> r.getUri().equals(uri)))
+                .map(MessageTypeRepositoryReferenceCache::admittedRepository)
+                .forEach(repositories::add);
+        return repositories;
+    }
+
+    private static RepositoryProperties admittedRepository(String gitUri) {
+        return new RepositoryProperties(gitUri, RepositoryProperties.RepositoryType.NONE, Map.of());
+    }
+
+    private void refreshOne(String gitUri, boolean respectDebounce) {
+        if (!isEnabled()) {
+            return;
+        }
+        Optional<RepositoryProperties> match = findRepository(gitUri);
         if (match.isEmpty()) {
             log.debug("refreshOne: gitUri={} is not a configured repository; skipping", gitUri);
             return;
         }
+        if (respectDebounce && isPushDriven(gitUri)) {
+            log.debug("refreshOne: gitUri={} is kept fresh by push notifications; skipping eager refresh", gitUri);
+            recordSkippedRefresh(gitUri, "push");
+            return;
+        }
         if (respectDebounce && withinDebounceWindow(gitUri)) {
             log.debug("refreshOne: gitUri={} within debounce window; skipping (debounceMs={})", gitUri, cacheProperties.getRefreshDebounceMillis());
+            recordSkippedRefresh(gitUri, "debounce");
             return;
         }
+        refreshSingleFlight(match.get(), System.nanoTime());
+    }
+
+    /**
+     * Runs or joins the refresh of {@code repo} so that it includes everything pushed before
+     * {@code requestedNanos}. Joins the in-flight refresh if its fetch has not started yet or started at or after
+     * {@code requestedNanos}; otherwise waits for it to finish and then runs or joins the next one.
+     */
+    private void refreshSingleFlight(RepositoryProperties repo, long requestedNanos) {
+        String gitUri = repo.getUri();
+        while (true) {
+            InFlightRefresh candidate = new InFlightRefresh();
+            InFlightRefresh inFlight = inFlightRefreshes.putIfAbsent(gitUri, candidate);
+            if (inFlight == null) {
+                try {
+                    refreshExclusively(repo, candidate);
+                } finally {
+                    inFlightRefreshes.remove(gitUri, candidate);
+                    candidate.completion().complete(null);
+                }
+                return;
+            }
+            boolean satisfies = inFlight.satisfies(requestedNanos);
+            if (satisfies) {
+                Counter.builder(COALESCED_COUNTER_NAME)
+                        .description("Reference repository cache refreshes served by joining an in-flight refresh")
+                        .tag("repository", gitUri)
+                        .register(meterRegistry)
+                        .increment();
+                log.debug("refreshOne: gitUri={} joining in-flight refresh", gitUri);
+            }
+            inFlight.completion().join();
+            if (satisfies) {
+                return;
+            }
+        }
+    }
+
+    private void refreshExclusively(RepositoryProperties repo, InFlightRefresh inFlight) {
+        String gitUri = repo.getUri();
         long lockWaitStart = System.nanoTime();
-        refreshLock.lock();
+        ReentrantLock lock = lockRefresh(gitUri);
         long lockWaitMs = elapsedMs(lockWaitStart);
         try {
-            if (respectDebounce && withinDebounceWindow(gitUri)) {
-                log.debug("refreshOne: gitUri={} debounced after acquiring lock (lockWaitMs={})", gitUri, lockWaitMs);
-                return;
-            }
+            inFlight.markFetchStarted();
             File cacheRoot = new File(cacheProperties.getDirectory());
             if (!cacheRoot.exists() && !cacheRoot.mkdirs()) {
                 log.error("Failed to create reference repository cache root directory {}", cacheRoot);
                 return;
             }
             long refreshStart = System.nanoTime();
-            refresh(match.get());
+            refresh(repo);
             log.info("refreshOne: gitUri={} refresh done in {} ms (lockWaitMs={})", gitUri, elapsedMs(refreshStart), lockWaitMs);
         } finally {
-            refreshLock.unlock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acquires the refresh lock of {@code gitUri}, recording the time spent waiting for it, and returns the held lock.
+     */
+    private ReentrantLock lockRefresh(String gitUri) {
+        ReentrantLock lock = refreshLockFor(gitUri);
+        long startNanos = System.nanoTime();
+        lock.lock();
+        Timer.builder(LOCK_WAIT_TIMER_NAME)
+                .description("Time spent waiting for the refresh lock of a reference repository cache entry")
+                .tag("repository", gitUri)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        return lock;
+    }
+
+    ReentrantLock refreshLockFor(String gitUri) {
+        return refreshLocks.computeIfAbsent(gitUri, _ -> new ReentrantLock());
+    }
+
+    /**
+     * A {@link #refreshOne(String)} refresh that other callers for the same URI can join.
+     */
+    private static final class InFlightRefresh {
+        private static final long NOT_STARTED = -1L;
+
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final AtomicLong fetchStartNanos = new AtomicLong(NOT_STARTED);
+
+        CompletableFuture<Void> completion() {
+            return completion;
+        }
+
+        void markFetchStarted() {
+            fetchStartNanos.set(System.nanoTime());
+        }
+
+        /**
+         * Whether this refresh picks up everything pushed before {@code requestedNanos}: true if its fetch has not
+         * started yet or started at or after {@code requestedNanos}.
+         */
+        boolean satisfies(long requestedNanos) {
+            long startNanos = fetchStartNanos.get();
+            return startNanos == NOT_STARTED || startNanos - requestedNanos >= 0;
         }
     }
 
+    private void recordSkippedRefresh(String gitUri, String reason) {
+        Counter.builder(SKIPPED_REFRESH_COUNTER_NAME)
+                .description("Eager reference repository cache refreshes skipped by the debounce window or push notifications")
+                .tag("repository", gitUri)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
     private boolean withinDebounceWindow(String gitUri) {
         Long last = lastRefreshNanos.get(gitUri);
         if (last == null) {
@@ -220,36 +803,208 @@ public class MessageTypeRepositoryReferenceCache {
         CredentialsProvider credentials = createCredentialsProvider(repo);
         long startNanos = System.nanoTime();
         try {
-            String operation = runRefresh(repo, cacheDir, credentials);
+            RefreshOperation operation = runRefresh(repo, cacheDir, credentials);
+            installNewGeneration(repo.getUri(), cacheDir);
             lastRefreshNanos.put(repo.getUri(), System.nanoTime());
-            log.info("refresh: {} for {} done in {} ms", operation, repo.getUri(), elapsedMs(startNanos));
+            recordRefresh(repo.getUri(), operation, cacheDir, startNanos);
+            registerRefreshAgeGauge(repo.getUri());
+            log.info("refresh: {} for {} done in {} ms", operation.description, repo.getUri(), elapsedMs(startNanos));
         } catch (Exception ex) {
             log.error("Failed to refresh reference repository cache for {} after {} ms", repo.getUri(), elapsedMs(startNanos), ex);
+            return;
+        }
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new MessageTypeRepositoryCacheRefreshedEvent(repo.getUri(), cacheDir));
         }
     }
 
-    private String runRefresh(RepositoryProperties repo, File cacheDir, CredentialsProvider credentials) throws GitAPIException, IOException {
+    private RefreshOperation runRefresh(RepositoryProperties repo, File cacheDir, CredentialsProvider credentials) throws GitAPIException, IOException {
         if (isValidBareRepo(cacheDir)) {
             fetchExisting(cacheDir, credentials);
-            return "incremental fetch";
+            return RefreshOperation.FETCH;
+        }
+        File stagingDir = siblingDir(cacheDir, STAGING_SUFFIX);
+        FileUtils.deleteDirectory(stagingDir);
+        try {
+            Optional<File> bundle = bundles.findBundle(cacheDir.getName());
+            if (bundle.isPresent() && bootstrapFromBundle(repo, bundle.get(), stagingDir, credentials)) {
+                publish(repo.getUri(), stagingDir, cacheDir);
+                return RefreshOperation.BUNDLE_BOOTSTRAP;
+            }
+            cloneBare(repo.getUri(), stagingDir, credentials);
+            publish(repo.getUri(), stagingDir, cacheDir);
+        } finally {
+            FileUtils.deleteQuietly(stagingDir);
+        }
+        return RefreshOperation.CLONE;
+    }
+
+    /**
+     * Seeds {@code stagingDir} with a mirror clone of {@code bundle}, points its {@code origin} at the upstream
+     * repository and fetches what changed upstream since the bundle was written.
+     *
+     * @return {@code false} if the bundle could not be used, in which case {@code stagingDir} has been cleaned up for
+     * a regular clone
+     */
+    private boolean bootstrapFromBundle(RepositoryProperties repo, File bundle, File stagingDir, CredentialsProvider credentials) throws IOException {
+        long startNanos = System.nanoTime();
+        try {
+            try (Git git = Git.cloneRepository()
+                    .setURI(bundle.getAbsolutePath())
+                    .setDirectory(stagingDir)
+                    .setBare(true)
+                    .setMirror(true)
+                    .call()) {
+                StoredConfig config = git.getRepository().getConfig();
+                config.setString("remote", "origin", "url", repo.getUri());
+                config.save();
+            }
+            long seededBytes = sizeOf(stagingDir);
+            fetchExisting(stagingDir, credentials);
+            bundles.recordBootstrap(repo.getUri(), bundle, sizeOf(stagingDir) - seededBytes);
+            log.info("bootstrapFromBundle: seeded {} from {} and fetched the delta in {} ms", repo.getUri(), bundle, elapsedMs(startNanos));
+            return true;
+        } catch (GitAPIException | IOException | RuntimeException ex) {
+            log.warn("bootstrapFromBundle: failed to seed {} from {}; falling back to a full clone", repo.getUri(), bundle, ex);
+            FileUtils.deleteDirectory(stagingDir);
+            return false;
         }
+    }
+
+    private void exportBundles(List<RepositoryProperties> repositories) {
+        for (RepositoryProperties repo : repositories) {
+            Optional<CacheRepositoryGeneration> generation = acquireRepository(repo.getUri());
+            if (generation.isEmpty()) {
+                continue;
+            }
+            try (CacheRepositoryGeneration snapshot = generation.get()) {
+                bundles.export(repo.getUri(), hashUri(repo.getUri()), snapshot);
+            } catch (IOException | RuntimeException ex) {
+                log.warn("exportBundles: failed to export a bundle of {}", repo.getUri(), ex);
+            }
+        }
+    }
+
+    /**
+     * Fetches the single commit {@code commitSha} into the shallow mirror of {@code gitUri}, for a requested commit
+     * that is older than the mirror's shallow boundary (see
+     * {@link MessageTypeRepositoryCacheProperties#getMirrorShallowSinceDays()}) and hence not reachable by a
+     * regular refresh. No-op for full-history mirrors, unknown repositories and missing entries.
+     */
+    public void fetchCommit(String gitUri, String commitSha) {
+        if (!isEnabled() || cacheProperties.getMirrorShallowSinceDays() <= 0 || !ObjectId.isId(commitSha)) {
+            return;
+        }
+        Optional<RepositoryProperties> repo = findRepository(gitUri);
+        File cacheDir = cacheDirFor(gitUri);
+        if (repo.isEmpty() || !isValidBareRepo(cacheDir)) {
+            return;
+        }
+        ReentrantLock lock = lockRefresh(gitUri);
+        long startNanos = System.nanoTime();
+        try (Git git = Git.open(cacheDir)) {
+            git.fetch()
+                    .setRemote("origin")
+                    .setCredentialsProvider(createCredentialsProvider(repo.get()))
+                    .setRefSpecs(new RefSpec(commitSha))
+                    .setDepth(1)
+                    .setTagOpt(TagOpt.NO_TAGS)
+                    .call();
+            installNewGeneration(gitUri, cacheDir);
+            recordRefresh(gitUri, RefreshOperation.COMMIT_FETCH, cacheDir, startNanos);
+            log.info("fetchCommit: fetched {} into the shallow mirror of {} in {} ms", commitSha, gitUri, elapsedMs(startNanos));
+        } catch (IOException | GitAPIException ex) {
+            log.warn("fetchCommit: failed to fetch {} into the mirror of {} after {} ms", commitSha, gitUri, elapsedMs(startNanos), ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the duration of a refresh of {@code gitUri} and the resulting on-disk size of its mirror.
+     */
+    private void recordRefresh(String gitUri, RefreshOperation operation, File cacheDir, long startNanos) {
+        Timer.builder(ENTRY_REFRESH_TIMER_NAME)
+                .description("Time taken to refresh a reference repository cache entry")
+                .tag("repository", gitUri)
+                .tag("operation", operation.tag)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        entrySizeBytes.put(gitUri, sizeOf(cacheDir));
+        Gauge.builder(ENTRY_SIZE_GAUGE_NAME, entrySizeBytes, sizes -> sizes.getOrDefault(gitUri, 0L))
+                .description("On-disk size of a reference repository cache entry")
+                .tag("repository", gitUri)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private void registerRefreshAgeGauge(String gitUri) {
+        Gauge.builder(ENTRY_REFRESH_AGE_GAUGE_NAME, this,
+                        cache -> cache.lastRefreshAge(gitUri).map(age -> age.toMillis() / 1000.0).orElse(Double.NaN))
+                .description("Time since the last successful refresh of a reference repository cache entry")
+                .tag("repository", gitUri)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    private enum RefreshOperation {
+        CLONE("full mirror clone", "clone"),
+        BUNDLE_BOOTSTRAP("bundle bootstrap and incremental fetch", "bundle"),
+        FETCH("incremental fetch", "fetch"),
+        COMMIT_FETCH("single commit fetch", "commitfetch");
+
+        private final String description;
+        private final String tag;
+
+        RefreshOperation(String description, String tag) {
+            this.description = description;
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * Atomically moves the freshly cloned {@code stagingDir} to {@code cacheDir}, first renaming an invalid entry
+     * at {@code cacheDir} aside and retiring its repository generation.
+     */
+    private void publish(String gitUri, File stagingDir, File cacheDir) throws IOException {
+        File retiredDir = null;
         if (cacheDir.exists()) {
-            log.info("Removing invalid reference repository cache at {}", cacheDir);
-            FileUtils.deleteDirectory(cacheDir);
+            log.info("Replacing invalid reference repository cache at {}", cacheDir);
+            retiredDir = siblingDir(cacheDir, RETIRED_SUFFIX);
+            FileUtils.deleteDirectory(retiredDir);
+            Files.move(cacheDir.toPath(), retiredDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            retireGeneration(gitUri);
+        }
+        Files.move(stagingDir.toPath(), cacheDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        if (retiredDir != null) {
+            FileUtils.deleteQuietly(retiredDir);
         }
-        cloneBare(repo.getUri(), cacheDir, credentials);
-        return "full mirror clone";
+    }
+
+    /**
+     * Atomically renames the mirror {@code cacheDir} to {@code retiredDir} before it is deleted.
+     */
+    void moveAside(File cacheDir, File retiredDir) throws IOException {
+        Files.move(cacheDir.toPath(), retiredDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static File siblingDir(File cacheDir, String suffix) {
+        return new File(cacheDir.getParentFile(), cacheDir.getName() + suffix);
     }
 
     @SuppressWarnings("EmptyTryBlock")
     private void cloneBare(String uri, File cacheDir, CredentialsProvider credentials) throws GitAPIException {
-        try (var _ = Git.cloneRepository()
+        CloneCommand cloneCommand = Git.cloneRepository()
                 .setURI(uri)
                 .setDirectory(cacheDir)
                 .setBare(true)
                 .setMirror(true)
-                .setCredentialsProvider(credentials)
-                .call()) {
+                .setCredentialsProvider(credentials);
+        long shallowSinceDays = cacheProperties.getMirrorShallowSinceDays();
+        if (shallowSinceDays > 0) {
+            cloneCommand.setShallowSince(Instant.now().minus(Duration.ofDays(shallowSinceDays)));
+        }
+        try (var _ = cloneCommand.call()) {
             // resources released; cache directory is now populated
         }
     }
@@ -265,6 +1020,40 @@ public class MessageTypeRepositoryReferenceCache {
         }
     }
 
+    /**
+     * Opens a new repository generation for the freshly refreshed {@code cacheDir} and swaps it in, retiring the
+     * previous one. If the new generation cannot be opened the previous one is retired anyway, as its ref snapshot
+     * no longer matches the entry; borrowers then open the entry lazily.
+     */
+    private void installNewGeneration(String gitUri, File cacheDir) {
+        CacheRepositoryGeneration next = openGeneration(gitUri, cacheDir);
+        CacheRepositoryGeneration previous = next != null ?
+                repositoryGenerations.put(gitUri, next) :
+                repositoryGenerations.remove(gitUri);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private void retireGeneration(String gitUri) {
+        CacheRepositoryGeneration previous = repositoryGenerations.remove(gitUri);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private CacheRepositoryGeneration openGeneration(String gitUri, File cacheDir) {
+        long startNanos = System.nanoTime();
+        try {
+            CacheRepositoryGeneration generation = CacheRepositoryGeneration.open(cacheDir, generationCounter.incrementAndGet());
+            log.debug("Opened reference cache repository generation {} for {} in {} ms", generation.generation(), gitUri, elapsedMs(startNanos));
+            return generation;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Failed to open reference repository cache for {} at {}", gitUri, cacheDir, ex);
+            return null;
+        }
+    }
+
     private boolean isValidBareRepo(File cacheDir) {
         return cacheDir.isDirectory()
                 && new File(cacheDir, "HEAD").exists()
@@ -278,7 +1067,7 @@ public class MessageTypeRepositoryReferenceCache {
 
     private CredentialsProvider createCredentialsProvider(RepositoryProperties repo) {
         if (RepositoryProperties.RepositoryType.GITHUB.equals(repo.getType())) {
-            return GitHubAppCredentialsProvider.fromParameters(repo.getParameters(), meterRegistry);
+            return credentialsProviders.forRepository(repo);
         }
         return null;
     }
@@ -296,4 +1085,24 @@ public class MessageTypeRepositoryReferenceCache {
             throw new IllegalStateException("SHA-256 not available", ex);
         }
     }
+
+    /**
+     * A lease on a cache entry held by one {@link MessageTypeRepository}. Closing it more than once has no effect.
+     */
+    final class EntryLease implements AutoCloseable {
+
+        private final String gitUri;
+        private final AtomicBoolean held = new AtomicBoolean(true);
+
+        private EntryLease(String gitUri) {
+            this.gitUri = gitUri;
+        }
+
+        @Override
+        public void close() {
+            if (held.compareAndSet(true, false)) {
+                entryLeases.computeIfPresent(gitUri, (_, leases) -> leases > 1 ? leases - 1 : null);
+            }
+        }
+    }
 }
@@ -0,0 +1,93 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.lib.ObjectId;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Content-addressed cache of compiled Avro protocol schemas.
+ * <p>
+ * A schema compiled from a message type registry is fully determined by the registry URL, the commit it was
+ * read from, the message type name and the message type version. Entries are therefore keyed by the full SHA of
+ * the resolved commit - a branch reference can move, a commit cannot, so cached entries never need to be
+ * invalidated. {@link MessageTypeRepository} resolves branch references to their current commit first and then
+ * looks up and caches their schemas by that commit, and {@link MessageTypeSchemaPrecompiler} fills the cache at the
+ * branch tips after each refresh. Lookups for a commit that was already resolved (e.g. for another app pinning the
+ * same registry commit, or referencing the same branch tip) are served without checking out or parsing anything.
+ * <p>
+ * The cache is bounded by the summed UTF-8 encoded schema size
+ * ({@link MessageTypeSchemaCacheProperties#getMaximumSizeBytes()}) and publishes its hit, miss and eviction statistics as {@code cache.*} meters tagged
+ * {@code cache=messagetypeschemacache}.
+ */
+@Slf4j
+@Component
+public class MessageTypeSchemaCache {
+
+    static final String CACHE_NAME = "messagetypeschemacache";
+
+    private final boolean enabled;
+    private final Cache<SchemaKey, String> cache;
+
+    public MessageTypeSchemaCache(MessageTypeSchemaCacheProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaximumSizeBytes())
+                .weigher((SchemaKey _, String schema) -> weigh(schema))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the cached schema for the given coordinates, if present. Always empty if {@code commitHash} is not a
+     * full commit SHA - resolve branch and abbreviated references first.
+     */
+    public Optional<String> get(String registryUrl, String commitHash, String messageType, String messageTypeVersion) {
+        if (!enabled || !isCacheable(commitHash)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.getIfPresent(new SchemaKey(registryUrl, commitHash, messageType, messageTypeVersion)));
+    }
+
+    /**
+     * Stores a compiled schema. Ignored if {@code commitHash} is not a full commit SHA.
+     */
+    public void put(String registryUrl, String commitHash, String messageType, String messageTypeVersion, String schema) {
+        if (!enabled || !isCacheable(commitHash) || schema == null) {
+            return;
+        }
+        cache.put(new SchemaKey(registryUrl, commitHash, messageType, messageTypeVersion), schema);
+        log.debug("Cached schema for {}:{} at {}@{}", messageType, messageTypeVersion, registryUrl, commitHash);
+    }
+
+    /**
+     * Weight of a cached schema: its UTF-8 encoded size, so that
+     * {@link MessageTypeSchemaCacheProperties#getMaximumSizeBytes()} is a bound in bytes also for schemas with
+     * non-ASCII documentation.
+     */
+    static int weigh(String schema) {
+        return schema.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    static boolean isCacheable(String commitHash) {
+        return commitHash != null && ObjectId.isId(commitHash);
+    }
+
+    private record SchemaKey(String registryUrl, String commitHash, String messageType, String messageTypeVersion) {
+        private SchemaKey {
+            commitHash = commitHash.toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "messages.schema-cache")
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageTypeSchemaCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Upper bound for the summed UTF-8 encoded size (in bytes) of all cached Avro protocol schemas. Entries are evicted
+     * in approximate least-recently-used order once the bound is exceeded.
+     */
+    private long maximumSizeBytes = 64L * 1024 * 1024;
+
+    /**
+     * Maximum number of {@code _common} import sets (one per registry commit and system) kept in memory by
+     * {@link SchemaImportCache}.
+     */
+    private long maximumImportSets = 512;
+}
@@ -0,0 +1,31 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "messages.schema-precompilation")
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageTypeSchemaPrecompilationProperties {
+
+    /**
+     * Compile the schemas of all message types at the configured branch tips in the background after every
+     * successful reference repository cache refresh.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Branches whose tips are pre-compiled. Branches missing in a registry are skipped.
+     */
+    private List<String> branches = List.of("master", "main");
+
+    /**
+     * Maximum number of registry branches pre-compiled at the same time.
+     */
+    private int parallelism = 2;
+}
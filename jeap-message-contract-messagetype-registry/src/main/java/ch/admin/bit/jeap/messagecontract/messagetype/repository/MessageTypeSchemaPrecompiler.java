@@ -0,0 +1,171 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepository.SchemaReference;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ch.admin.bit.jeap.messagecontract.messagetype.repository.Elapsed.elapsedMs;
+
+/**
+ * Warms up {@link MessageTypeSchemaCache} after reference repository cache refreshes.
+ * <p>
+ * When enabled ({@link MessageTypeSchemaPrecompilationProperties#isEnabled()}), every
+ * {@link MessageTypeRepositoryCacheRefreshedEvent} schedules the registry for pre-compilation on a background pool of
+ * {@link MessageTypeSchemaPrecompilationProperties#getParallelism()} threads. Pre-compilation resolves the configured
+ * branch tips in the refreshed cache, enumerates every version of every event and command message type at each tip
+ * and compiles the schemas not cached yet. Since {@link MessageTypeRepository} looks up cached schemas by the commit a
+ * reference resolves to, uploads referencing a pre-compiled branch tip - by branch or by commit - no longer check
+ * out or parse anything. A refresh arriving while the registry is still waiting for pre-compilation is merged into
+ * the pending run.
+ * <p>
+ * Progress is published as {@code messagetypeschemaprecompilation.schemas} (tagged with the registry and the result
+ * {@code compiled}, {@code cached} or {@code failed}) and {@code messagetypeschemaprecompilation.pending} (schemas
+ * enumerated but not processed yet), the duration per registry as {@code messagetypeschemaprecompilation.time}.
+ */
+@Slf4j
+@Component
+public class MessageTypeSchemaPrecompiler implements Closeable {
+
+    static final String SCHEMAS_COUNTER_NAME = "messagetypeschemaprecompilation.schemas";
+    static final String TIMER_NAME = "messagetypeschemaprecompilation.time";
+    static final String PENDING_GAUGE_NAME = "messagetypeschemaprecompilation.pending";
+
+    private final MessageTypeSchemaPrecompilationProperties properties;
+    private final MessageTypeRepositoryReferenceCache referenceCache;
+    private final MessageTypeRepositoryFactory repositoryFactory;
+    private final MessageTypeSchemaCache schemaCache;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> scheduledRegistries = ConcurrentHashMap.newKeySet();
+    private final AtomicLong pendingSchemas = new AtomicLong();
+    private final ExecutorService executor;
+
+    public MessageTypeSchemaPrecompiler(MessageTypeSchemaPrecompilationProperties properties,
+                                        MessageTypeRepositoryReferenceCache referenceCache,
+                                        MessageTypeRepositoryFactory repositoryFactory,
+                                        MessageTypeSchemaCache schemaCache,
+                                        MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.referenceCache = referenceCache;
+        this.repositoryFactory = repositoryFactory;
+        this.schemaCache = schemaCache;
+        this.meterRegistry = meterRegistry;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getParallelism()),
+                Thread.ofVirtual().name("messagetype-precompile-", 0).factory());
+        meterRegistry.gauge(PENDING_GAUGE_NAME, pendingSchemas);
+    }
+
+    @EventListener
+    public void onCacheRefreshed(MessageTypeRepositoryCacheRefreshedEvent event) {
+        if (!properties.isEnabled() || !schemaCache.isEnabled()) {
+            return;
+        }
+        String gitUri = event.gitUri();
+        if (!scheduledRegistries.add(gitUri)) {
+            log.debug("onCacheRefreshed: pre-compilation of {} already scheduled", gitUri);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                scheduledRegistries.remove(gitUri);
+                precompile(gitUri);
+            });
+        } catch (RejectedExecutionException ex) {
+            scheduledRegistries.remove(gitUri);
+            log.debug("onCacheRefreshed: pre-compilation of {} rejected, shutting down", gitUri);
+        }
+    }
+
+    /**
+     * Compiles and caches all schemas at the configured branch tips of {@code gitUri}. Failures are logged and
+     * counted, never thrown - a schema that does not compile is simply compiled (and fails) again on request.
+     */
+    void precompile(String gitUri) {
+        long startNanos = System.nanoTime();
+        Map<String, ObjectId> branchTips = resolveBranchTips(gitUri);
+        if (branchTips.isEmpty()) {
+            log.debug("precompile: none of the branches {} found for {}", properties.getBranches(), gitUri);
+            return;
+        }
+        int compiled = 0;
+        // Background work must not hold permits of the interactive bulkhead, the pool size bounds it instead
+        try (MessageTypeRepository repository = repositoryFactory.cloneRepositoryForBackgroundWork(gitUri)) {
+            for (Map.Entry<String, ObjectId> branchTip : branchTips.entrySet()) {
+                compiled += precompileCommit(gitUri, repository, branchTip.getKey(), branchTip.getValue());
+            }
+        } catch (RuntimeException ex) {
+            log.warn("precompile: pre-compilation of {} failed after {} ms", gitUri, elapsedMs(startNanos), ex);
+        } finally {
+            Timer.builder(TIMER_NAME)
+                    .description("Time taken to pre-compile the schemas at the branch tips of a registry")
+                    .tag("registry", gitUri)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+        log.info("precompile: compiled {} schema(s) at {} of {} in {} ms", compiled, branchTips.keySet(), gitUri, elapsedMs(startNanos));
+    }
+
+    private int precompileCommit(String gitUri, MessageTypeRepository repository, String branch, ObjectId commit) {
+        List<SchemaReference> references = repository.getAllSchemaReferences(commit.name());
+        pendingSchemas.addAndGet(references.size());
+        int compiled = 0;
+        for (SchemaReference reference : references) {
+            String result = "cached";
+            try {
+                if (schemaCache.get(gitUri, commit.name(), reference.messageTypeName(), reference.messageTypeVersion()).isEmpty()) {
+                    repository.getSchemasAsAvroProtocolJson(List.of(reference));
+                    result = "compiled";
+                    compiled++;
+                }
+            } catch (RuntimeException ex) {
+                result = "failed";
+                log.debug("precompile: {}:{} at {}@{} failed: {}", reference.messageTypeName(),
+                        reference.messageTypeVersion(), branch, commit.name(), ex.getMessage());
+            } finally {
+                pendingSchemas.decrementAndGet();
+                meterRegistry.counter(SCHEMAS_COUNTER_NAME, "registry", gitUri, "result", result).increment();
+            }
+        }
+        return compiled;
+    }
+
+    private Map<String, ObjectId> resolveBranchTips(String gitUri) {
+        Map<String, ObjectId> branchTips = new LinkedHashMap<>();
+        Optional<CacheRepositoryGeneration> cacheRepository = referenceCache.acquireRepository(gitUri);
+        if (cacheRepository.isEmpty()) {
+            return branchTips;
+        }
+        try (CacheRepositoryGeneration generation = cacheRepository.get()) {
+            for (String branch : properties.getBranches()) {
+                Ref ref = generation.exactRef(Constants.R_HEADS + branch);
+                if (ref != null && ref.getObjectId() != null) {
+                    branchTips.put(branch, ref.getObjectId());
+                }
+            }
+        }
+        return branchTips;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,322 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ch.admin.bit.jeap.messagecontract.messagetype.repository.Elapsed.elapsedMs;
+
+/**
+ * Pool of reusable, alternates-wired worktrees per cached message type repository.
+ * <p>
+ * Without the pool, every cache-backed {@link MessageTypeRepository} creates a temporary directory, runs
+ * {@code git init}, writes the alternates file, checks out the full tree and deletes it all again on close. Pooled
+ * worktrees are initialised once and leased to {@link MessageTypeRepository} instances by
+ * {@link MessageTypeRepositoryFactory}. Leasing a worktree that was used before only checks out the files that
+ * differ from its last commit. On return, a worktree is reset ({@code git reset --hard} + {@code git clean}) and
+ * kept idle for the next lease. Worktrees left idle for longer than
+ * {@link MessageTypeWorktreePoolProperties#getIdleTimeoutMillis()} are deleted by a periodic eviction. Whenever the
+ * cache entry of a repository has been refreshed, the pool is topped up to
+ * {@link MessageTypeWorktreePoolProperties#getPrewarmedWorktreesPerRepository()} initialised worktrees.
+ * <p>
+ * Pooled worktrees live below a pool directory that is removed on shutdown ({@link #close()}), so nothing is registered with
+ * {@link File#deleteOnExit()}. The pool publishes the lease wait time ({@code messagetypeworktreepool.lease.time},
+ * tagged with the result {@code reused}, {@code created} or {@code timeout}), the pool size
+ * ({@code messagetypeworktreepool.size}, tagged with the state {@code idle} or {@code leased}) and the reset time
+ * ({@code messagetypeworktreepool.reset.time}), all tagged with the repository URI.
+ */
+@Slf4j
+@Component
+public class MessageTypeWorktreePool implements Closeable {
+
+    private final MessageTypeWorktreePoolProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, RepositoryPool> pools = new ConcurrentHashMap<>();
+    private volatile Path poolDir;
+
+    public MessageTypeWorktreePool(MessageTypeWorktreePoolProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Leases a worktree for {@code gitUri} whose object database is backed by {@code referenceCacheDir} through
+     * alternates. A freshly created worktree has no commit checked out yet. Returns {@link Optional#empty()} if
+     * no worktree became available within the lease timeout - callers then fall back to an unpooled worktree.
+     */
+    public Optional<PooledWorktree> lease(String gitUri, File referenceCacheDir) {
+        long startNanos = System.nanoTime();
+        RepositoryPool pool = pools.computeIfAbsent(gitUri, this::createRepositoryPool);
+        if (!acquireCapacity(pool)) {
+            log.info("lease: no pooled worktree for {} available within {} ms, falling back to an unpooled worktree",
+                    gitUri, properties.getLeaseTimeoutMillis());
+            recordLease(pool, "timeout", startNanos);
+            return Optional.empty();
+        }
+        PooledWorktree worktree = pool.idle.pollFirst();
+        String result = "reused";
+        try {
+            if (worktree != null && !worktree.referenceCacheDir().equals(referenceCacheDir)) {
+                destroy(worktree);
+                worktree = null;
+            }
+            if (worktree == null) {
+                worktree = createWorktree(gitUri, referenceCacheDir);
+                result = "created";
+            }
+        } catch (IOException | GitAPIException | RuntimeException ex) {
+            pool.capacity.release();
+            throw MessageTypeRepoException.cloneFailed(gitUri, ex);
+        }
+        pool.leased.incrementAndGet();
+        recordLease(pool, result, startNanos);
+        log.debug("lease: {} worktree {} for {} in {} ms", result, worktree.directory(), gitUri, elapsedMs(startNanos));
+        return Optional.of(worktree);
+    }
+
+    /**
+     * Returns a leased worktree to the pool. The worktree is reset to its checked-out commit and all untracked
+     * files are removed; a worktree that cannot be reset is deleted instead.
+     */
+    public void release(PooledWorktree worktree) {
+        RepositoryPool pool = pools.get(worktree.gitUri());
+        long startNanos = System.nanoTime();
+        try {
+            worktree.git().reset().setMode(ResetCommand.ResetType.HARD).call();
+            worktree.git().clean().setCleanDirectories(true).setIgnore(false).setForce(true).call();
+            worktree.touch();
+            pool.idle.offerFirst(worktree);
+        } catch (GitAPIException | RuntimeException ex) {
+            log.warn("release: failed to reset worktree {}, deleting it", worktree.directory(), ex);
+            destroy(worktree);
+        } finally {
+            pool.leased.decrementAndGet();
+            pool.capacity.release();
+            pool.resetTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${messages.worktree-pool.eviction-interval-millis:60000}")
+    public void evictIdle() {
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(properties.getIdleTimeoutMillis());
+        long now = System.nanoTime();
+        for (RepositoryPool pool : pools.values()) {
+            Iterator<PooledWorktree> idleWorktrees = pool.idle.iterator();
+            while (idleWorktrees.hasNext()) {
+                PooledWorktree worktree = idleWorktrees.next();
+                if (now - worktree.lastReturnedNanos() > idleTimeoutNanos && pool.idle.removeFirstOccurrence(worktree)) {
+                    log.debug("evictIdle: evicting idle worktree {} of {}", worktree.directory(), worktree.gitUri());
+                    destroy(worktree);
+                }
+            }
+        }
+    }
+
+    /**
+     * Initialises idle worktrees for a refreshed cache entry until the pool of the repository holds
+     * {@link MessageTypeWorktreePoolProperties#getPrewarmedWorktreesPerRepository()} (at most
+     * {@link MessageTypeWorktreePoolProperties#getMaxSizePerRepository()}) leased and idle worktrees. Failures are
+     * logged, the worktree is then simply created on lease.
+     */
+    @EventListener
+    public void onCacheRefreshed(MessageTypeRepositoryCacheRefreshedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        RepositoryPool pool = pools.computeIfAbsent(event.gitUri(), this::createRepositoryPool);
+        int target = Math.min(properties.getMaxSizePerRepository(), properties.getPrewarmedWorktreesPerRepository());
+        try {
+            while (pool.idle.size() + pool.leased.get() < target) {
+                pool.idle.offerLast(createWorktree(event.gitUri(), event.cacheDir()));
+            }
+        } catch (IOException | GitAPIException | RuntimeException ex) {
+            log.warn("onCacheRefreshed: failed to prewarm worktrees for {}", event.gitUri(), ex);
+        }
+    }
+
+    /**
+     * Deletes the idle worktrees of an evicted cache entry, as their alternates point at the mirror about to be
+     * deleted. The cache does not evict an entry while any of its worktrees is leased.
+     */
+    @EventListener
+    public void onCacheEvicted(MessageTypeRepositoryCacheEvictedEvent event) {
+        RepositoryPool pool = pools.get(event.gitUri());
+        if (pool == null) {
+            return;
+        }
+        PooledWorktree worktree;
+        while ((worktree = pool.idle.pollFirst()) != null) {
+            log.debug("onCacheEvicted: deleting idle worktree {} of {}", worktree.directory(), worktree.gitUri());
+            destroy(worktree);
+        }
+    }
+
+    /**
+     * Deletes all idle worktrees and the pool directory. Called by Spring on shutdown.
+     */
+    @Override
+    public void close() {
+        pools.values().forEach(pool -> {
+            PooledWorktree worktree;
+            while ((worktree = pool.idle.pollFirst()) != null) {
+                destroy(worktree);
+            }
+        });
+        if (poolDir != null) {
+            FileUtils.deleteQuietly(poolDir.toFile());
+        }
+    }
+
+    private boolean acquireCapacity(RepositoryPool pool) {
+        if (properties.getLeaseTimeoutMillis() <= 0) {
+            return pool.capacity.tryAcquire();
+        }
+        try {
+            return pool.capacity.tryAcquire(properties.getLeaseTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void recordLease(RepositoryPool pool, String result, long startNanos) {
+        Timer.builder("messagetypeworktreepool.lease.time")
+                .description("Time taken to lease a pooled message type repository worktree")
+                .tag("repository", pool.gitUri)
+                .tag("result", result)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private PooledWorktree createWorktree(String gitUri, File referenceCacheDir) throws IOException, GitAPIException {
+        File directory = Files.createTempDirectory(poolDir(), "worktree").toFile();
+        try {
+            Git git = MessageTypeRepository.initWithAlternates(directory, referenceCacheDir);
+            return new PooledWorktree(gitUri, referenceCacheDir, directory, git);
+        } catch (IOException | GitAPIException | RuntimeException ex) {
+            FileUtils.deleteQuietly(directory);
+            throw ex;
+        }
+    }
+
+    private Path poolDir() throws IOException {
+        if (poolDir == null) {
+            synchronized (this) {
+                if (poolDir == null) {
+                    poolDir = Files.createTempDirectory("messageTypeWorktreePool"); // NOSONAR
+                }
+            }
+        }
+        return poolDir;
+    }
+
+    private static void destroy(PooledWorktree worktree) {
+        worktree.git().close();
+        try {
+            FileUtils.forceDelete(worktree.directory());
+        } catch (IOException ex) {
+            log.error("Failed to delete pooled worktree {}", worktree.directory(), ex);
+        }
+    }
+
+    private RepositoryPool createRepositoryPool(String gitUri) {
+        RepositoryPool pool = new RepositoryPool(gitUri, properties.getMaxSizePerRepository(), meterRegistry);
+        Gauge.builder("messagetypeworktreepool.size", pool.idle, Deque::size)
+                .description("Number of pooled message type repository worktrees")
+                .tag("repository", gitUri)
+                .tag("state", "idle")
+                .register(meterRegistry);
+        Gauge.builder("messagetypeworktreepool.size", pool.leased, AtomicInteger::get)
+                .description("Number of pooled message type repository worktrees")
+                .tag("repository", gitUri)
+                .tag("state", "leased")
+                .register(meterRegistry);
+        return pool;
+    }
+
+    /**
+     * A worktree owned by the pool. {@link #git()} stays open while the worktree is pooled.
+     */
+    public static final class PooledWorktree {
+        private final String gitUri;
+        private final File referenceCacheDir;
+        private final File directory;
+        private final Git git;
+        private volatile long lastReturnedNanos = System.nanoTime();
+
+        private PooledWorktree(String gitUri, File referenceCacheDir, File directory, Git git) {
+            this.gitUri = gitUri;
+            this.referenceCacheDir = referenceCacheDir;
+            this.directory = directory;
+            this.git = git;
+        }
+
+        String gitUri() {
+            return gitUri;
+        }
+
+        File referenceCacheDir() {
+            return referenceCacheDir;
+        }
+
+        File directory() {
+            return directory;
+        }
+
+        Git git() {
+            return git;
+        }
+
+        long lastReturnedNanos() {
+            return lastReturnedNanos;
+        }
+
+        private void touch() {
+            lastReturnedNanos = System.nanoTime();
+        }
+    }
+
+    private static final class RepositoryPool {
+        private final String gitUri;
+        private final Semaphore capacity;
+        private final Deque<PooledWorktree> idle = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger leased = new AtomicInteger();
+        private final Timer resetTimer;
+
+        private RepositoryPool(String gitUri, int maxSize, MeterRegistry meterRegistry) {
+            this.gitUri = gitUri;
+            this.capacity = new Semaphore(Math.max(1, maxSize), true);
+            this.resetTimer = Timer.builder("messagetypeworktreepool.reset.time")
+                    .description("Time taken to reset a message type repository worktree returned to the pool")
+                    .tag("repository", gitUri)
+                    .register(meterRegistry);
+        }
+    }
+}
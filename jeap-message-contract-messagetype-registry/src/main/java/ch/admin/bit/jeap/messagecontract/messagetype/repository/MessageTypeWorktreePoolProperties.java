@@ -0,0 +1,45 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "messages.worktree-pool")
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageTypeWorktreePoolProperties {
+
+    /**
+     * Lease pooled worktrees for cache-backed requests. Opt-in, as pooled worktrees stay on disk between requests
+     * (up to {@link #maxSizePerRepository} per cached repository).
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of worktrees (leased and idle) per cached repository. A lease request arriving while all of
+     * them are leased waits for one to be returned.
+     */
+    private int maxSizePerRepository = 8;
+
+    /**
+     * Number of worktrees (at most {@link #maxSizePerRepository}) initialised ahead of the first lease whenever the
+     * cache entry of a repository has been refreshed, so that a burst of requests does not create them one by one.
+     */
+    private int prewarmedWorktreesPerRepository = 2;
+
+    /**
+     * How long a lease request waits for a worktree to be returned once {@link #maxSizePerRepository} is reached.
+     * On timeout the request falls back to an unpooled temporary worktree. The default of {@code 0} falls back
+     * immediately: waiting for a worktree only adds latency to a request that can provision its own.
+     */
+    private long leaseTimeoutMillis = 0L;
+
+    /**
+     * Idle worktrees that have not been leased for this long are deleted by the periodic eviction.
+     */
+    private long idleTimeoutMillis = 10 * 60_000L;
+
+    private long evictionIntervalMillis = 60_000L;
+}
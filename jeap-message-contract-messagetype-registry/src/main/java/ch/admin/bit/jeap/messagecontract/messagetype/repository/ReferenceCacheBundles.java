@@ -0,0 +1,134 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.BundleWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static ch.admin.bit.jeap.messagecontract.messagetype.repository.Elapsed.elapsedMs;
+
+/**
+ * Git bundle snapshots of reference cache entries, kept in
+ * {@link MessageTypeRepositoryCacheProperties#getBundleDirectory()} as {@code <entry name>.bundle}.
+ * <p>
+ * {@link MessageTypeRepositoryReferenceCache} exports a bundle of every entry after a full refresh, at most once per
+ * {@link MessageTypeRepositoryCacheProperties#getBundleExportIntervalMillis()}, and seeds a missing entry from its
+ * bundle before fetching the delta from upstream. Bundles are written to a temporary file and renamed into place, so
+ * several instances can share the directory.
+ */
+@Slf4j
+final class ReferenceCacheBundles {
+
+    static final String EXPORT_TIMER_NAME = "messagetyperepositorycache.bundle.export.time";
+    static final String BUNDLE_AGE_SUMMARY_NAME = "messagetyperepositorycache.bootstrap.bundle.age";
+    static final String FETCHED_BYTES_SUMMARY_NAME = "messagetyperepositorycache.bootstrap.fetched";
+    private static final String BUNDLE_SUFFIX = ".bundle";
+
+    private final MessageTypeRepositoryCacheProperties cacheProperties;
+    private final MeterRegistry meterRegistry;
+
+    ReferenceCacheBundles(MessageTypeRepositoryCacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        this.cacheProperties = cacheProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    boolean isEnabled() {
+        return cacheProperties.getBundleDirectory() != null && !cacheProperties.getBundleDirectory().isBlank();
+    }
+
+    /**
+     * Returns the bundle of the entry {@code entryName}, if bundles are enabled and one exists.
+     */
+    Optional<File> findBundle(String entryName) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        File bundle = bundleFile(entryName);
+        return bundle.isFile() ? Optional.of(bundle) : Optional.empty();
+    }
+
+    /**
+     * Writes a bundle of all refs in the snapshot of {@code generation}, unless the existing bundle of the entry is
+     * younger than the export interval. Shallow mirrors are not exported, as a bundle of them could not be cloned.
+     */
+    void export(String gitUri, String entryName, CacheRepositoryGeneration generation) throws IOException {
+        if (!isEnabled() || cacheProperties.getMirrorShallowSinceDays() > 0) {
+            return;
+        }
+        File bundle = bundleFile(entryName);
+        if (bundle.isFile() && age(bundle).toMillis() < cacheProperties.getBundleExportIntervalMillis()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        Path directory = Files.createDirectories(Path.of(cacheProperties.getBundleDirectory()));
+        Path temporaryBundle = directory.resolve(entryName + BUNDLE_SUFFIX + ".tmp-" + UUID.randomUUID());
+        try {
+            BundleWriter writer = new BundleWriter(generation.repository());
+            for (Ref ref : generation.refs()) {
+                if (ref.getName().equals(Constants.HEAD)) {
+                    if (ref.getLeaf().getObjectId() != null) {
+                        writer.include(Constants.HEAD, ref.getLeaf().getObjectId());
+                    }
+                } else if (!ref.isSymbolic() && ref.getObjectId() != null) {
+                    writer.include(ref);
+                }
+            }
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporaryBundle))) {
+                writer.writeBundle(NullProgressMonitor.INSTANCE, out);
+            }
+            Files.move(temporaryBundle, bundle.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryBundle);
+        }
+        Timer.builder(EXPORT_TIMER_NAME)
+                .description("Time taken to export a reference repository cache entry as git bundle")
+                .tag("repository", gitUri)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        log.info("export: wrote bundle {} of {} ({} bytes) in {} ms", bundle, gitUri, bundle.length(), elapsedMs(startNanos));
+    }
+
+    /**
+     * Records the age of the {@code bundle} an entry was seeded from and the bytes the delta fetch from upstream
+     * added on top of it.
+     */
+    void recordBootstrap(String gitUri, File bundle, long fetchedBytes) {
+        DistributionSummary.builder(BUNDLE_AGE_SUMMARY_NAME)
+                .description("Age of the git bundle a reference repository cache entry was seeded from")
+                .tag("repository", gitUri)
+                .baseUnit("seconds")
+                .register(meterRegistry)
+                .record(age(bundle).toSeconds());
+        DistributionSummary.builder(FETCHED_BYTES_SUMMARY_NAME)
+                .description("Bytes fetched from upstream on top of the git bundle a cache entry was seeded from")
+                .tag("repository", gitUri)
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .record(Math.max(0, fetchedBytes));
+    }
+
+    private File bundleFile(String entryName) {
+        return new File(cacheProperties.getBundleDirectory(), entryName + BUNDLE_SUFFIX);
+    }
+
+    private static Duration age(File file) {
+        return Duration.between(Instant.ofEpochMilli(file.lastModified()), Instant.now());
+    }
+}
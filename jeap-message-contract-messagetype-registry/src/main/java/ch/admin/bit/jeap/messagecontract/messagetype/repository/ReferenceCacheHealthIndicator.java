@@ -0,0 +1,84 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import org.springframework.boot.health.contributor.CompositeHealthContributor;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.boot.health.contributor.Status;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reports the staleness of the reference cache entry of one configured repository: {@code UP} while its last
+ * successful refresh is younger than {@link MessageTypeRepositoryCacheProperties#getHealthStaleAfterMillis()},
+ * {@link #STALE} once it is older and {@code UNKNOWN} until the entry has been refreshed for the first time.
+ * <p>
+ * A stale entry still serves schemas (and is refreshed on a cache miss), so staleness is reported with its own status
+ * rather than {@code DOWN}: by default, Spring Boot maps {@code STALE} to HTTP 200, and an outdated mirror does not
+ * fail the liveness or readiness probes of the service. To alert on it, add {@code STALE} to
+ * {@code management.endpoint.health.status.order} or {@code management.endpoint.health.status.http-mapping}.
+ */
+final class ReferenceCacheHealthIndicator implements HealthIndicator {
+
+    static final Status STALE = new Status("STALE", "Reference cache entry has not been refreshed recently");
+
+    private final MessageTypeRepositoryReferenceCache referenceCache;
+    private final String gitUri;
+    private final Duration staleAfter;
+
+    ReferenceCacheHealthIndicator(MessageTypeRepositoryReferenceCache referenceCache, String gitUri, Duration staleAfter) {
+        this.referenceCache = referenceCache;
+        this.gitUri = gitUri;
+        this.staleAfter = staleAfter;
+    }
+
+    /**
+     * One {@link ReferenceCacheHealthIndicator} per configured repository, named after the repository URI without
+     * its scheme (see {@link #contributorName(String)}).
+     */
+    static CompositeHealthContributor forRepositories(MessageTypeRepositoryReferenceCache referenceCache,
+                                                      MessageTypeRepositoryProperties repositoryProperties,
+                                                      MessageTypeRepositoryCacheProperties cacheProperties) {
+        Duration staleAfter = Duration.ofMillis(cacheProperties.getHealthStaleAfterMillis());
+        List<RepositoryProperties> repositories = repositoryProperties.getRepositories() == null ? List.of() :
+                repositoryProperties.getRepositories();
+        Map<String, HealthIndicator> indicators = new LinkedHashMap<>();
+        for (RepositoryProperties repository : repositories) {
+            indicators.putIfAbsent(contributorName(repository.getUri()),
+                    new ReferenceCacheHealthIndicator(referenceCache, repository.getUri(), staleAfter));
+        }
+        return CompositeHealthContributor.fromMap(indicators);
+    }
+
+    /**
+     * Health contributor name of {@code gitUri}, e.g. {@code github.com-org-registry.git} for
+     * {@code https://github.com/org/registry.git}. Contributor names are path segments of the health endpoint.
+     */
+    static String contributorName(String gitUri) {
+        int schemeEnd = gitUri.indexOf("://");
+        String withoutScheme = schemeEnd >= 0 ? gitUri.substring(schemeEnd + 3) : gitUri;
+        return withoutScheme.replaceAll("[^A-Za-z0-9._-]+", "-");
+    }
+
+    @Override
+    public Health health() {
+        Optional<Duration> age = referenceCache.lastRefreshAge(gitUri);
+        if (age.isEmpty()) {
+            return Health.unknown()
+                    .withDetail("repository", gitUri)
+                    .withDetail("refreshed", false)
+                    .build();
+        }
+        Health.Builder health = age.get().compareTo(staleAfter) > 0 ? Health.status(STALE) : Health.up();
+        health.withDetail("repository", gitUri)
+                .withDetail("lastRefresh", Instant.now().minus(age.get()).toString())
+                .withDetail("ageSeconds", age.get().toSeconds())
+                .withDetail("staleAfterSeconds", staleAfter.toSeconds());
+        referenceCache.entrySize(gitUri).ifPresent(size -> health.withDetail("sizeBytes", size));
+        return health.build();
+    }
+}
@@ -0,0 +1,177 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import ch.admin.bit.jeap.messaging.avro.plugin.validator.MessageTypeRegistryConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads message type registry content straight from a repository's object database at a single commit, without
+ * a worktree. Used by {@link MessageTypeRepository} in worktree-free mode against the bare reference cache.
+ * <p>
+ * All paths handled by this class are repository-relative and use {@code /} as separator, e.g.
+ * {@code descriptor/activ/event/activzoneenteredevent/ActivZoneEnteredEvent.json}.
+ */
+@Slf4j
+class RegistryTreeReader {
+
+    private static final String DESCRIPTOR_DIR = "descriptor";
+
+    private final Repository repository;
+    private final ObjectId commit;
+    /**
+     * Blob ids of every file below {@code descriptor/}, keyed by repository-relative path in tree order.
+     */
+    private final Map<String, ObjectId> descriptorTreeFiles;
+
+    RegistryTreeReader(Repository repository, ObjectId commit) throws IOException {
+        this.repository = repository;
+        this.commit = commit;
+        this.descriptorTreeFiles = listDescriptorTreeFiles(repository, commit);
+    }
+
+    ObjectId commit() {
+        return commit;
+    }
+
+    /**
+     * Returns the path of the JSON descriptor of every message type directory below
+     * {@code descriptor/<system>/<typeSubdir>/}, mirroring the directory scan done on a worktree: system
+     * {@code _common} directories are skipped and the first JSON file (in name order) of each message type
+     * directory is taken as its descriptor.
+     */
+    List<String> findDescriptorPaths(String typeSubdir) {
+        Map<String, String> descriptorPathByTypeDir = new LinkedHashMap<>();
+        for (String path : descriptorTreeFiles.keySet()) {
+            String[] segments = path.split("/");
+            boolean descriptorFile = segments.length == 5
+                    && !segments[1].equals(MessageTypeRegistryConstants.COMMON_DIR_NAME)
+                    && segments[2].equals(typeSubdir)
+                    && FilenameUtils.getExtension(segments[4]).equals("json");
+            if (descriptorFile) {
+                descriptorPathByTypeDir.putIfAbsent(parentOf(path), path);
+            }
+        }
+        return List.copyOf(descriptorPathByTypeDir.values());
+    }
+
+    byte[] readFile(String path) throws IOException {
+        ObjectId blobId = descriptorTreeFiles.get(path);
+        if (blobId == null) {
+            throw new IOException("File " + path + " not found at commit " + commit.name());
+        }
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return reader.open(blobId, Constants.OBJ_BLOB).getBytes();
+        }
+    }
+
+    /**
+     * Builds the repository-relative schema locations of the message type whose descriptor is at
+     * {@code descriptorPath}, using the same layout rules as for a worktree.
+     */
+    static SchemaLocations schemaLocationsFor(String descriptorPath) {
+        String messageTypeDir = parentOf(descriptorPath);
+        String systemDir = parentOf(parentOf(messageTypeDir));
+        String descriptorDir = parentOf(systemDir);
+        return new SchemaLocations(
+                new File(messageTypeDir),
+                new File(systemDir + "/" + MessageTypeRegistryConstants.COMMON_DIR_NAME),
+                new File(descriptorDir + "/" + MessageTypeRegistryConstants.COMMON_DIR_NAME));
+    }
+
+    /**
+     * Writes the files directly contained in the three directories of the repository-relative
+     * {@code schemaLocations} below {@code targetDir} and returns the locations rebased onto it. The Avro IDL
+     * parser only accepts a file as its entry point, so this is the only part of the registry that is
+     * materialised in worktree-free mode.
+     */
+    SchemaLocations extractSchemaFiles(SchemaLocations schemaLocations, Path targetDir) throws IOException {
+        return extractSchemaFiles(schemaLocations, targetDir, true);
+    }
+
+    /**
+     * Like {@link #extractSchemaFiles(SchemaLocations, Path)}, but only extracts the message type directory unless
+     * {@code includeCommonDirs} is set - for callers that resolve {@code _common} imports from memory.
+     */
+    SchemaLocations extractSchemaFiles(SchemaLocations schemaLocations, Path targetDir, boolean includeCommonDirs) throws IOException {
+        SchemaLocations extracted = new SchemaLocations(
+                targetDir.resolve(repoPath(schemaLocations.messageTypeDir())).toFile(),
+                targetDir.resolve(repoPath(schemaLocations.systemCommonDir())).toFile(),
+                targetDir.resolve(repoPath(schemaLocations.rootCommonDir())).toFile());
+        extractDirectory(repoPath(schemaLocations.messageTypeDir()), extracted.messageTypeDir().toPath());
+        if (includeCommonDirs) {
+            extractDirectory(repoPath(schemaLocations.systemCommonDir()), extracted.systemCommonDir().toPath());
+            extractDirectory(repoPath(schemaLocations.rootCommonDir()), extracted.rootCommonDir().toPath());
+        }
+        return extracted;
+    }
+
+    boolean containsFile(String path) {
+        return descriptorTreeFiles.containsKey(path);
+    }
+
+    /**
+     * Reads the files directly contained in the repository-relative {@code directory}, keyed by file name.
+     */
+    Map<String, byte[]> readDirectoryFiles(String directory) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (String path : descriptorTreeFiles.keySet()) {
+            if (parentOf(path).equals(directory)) {
+                files.put(FilenameUtils.getName(path), readFile(path));
+            }
+        }
+        return files;
+    }
+
+    private void extractDirectory(String directory, Path target) throws IOException {
+        Files.createDirectories(target);
+        for (String path : descriptorTreeFiles.keySet()) {
+            if (parentOf(path).equals(directory)) {
+                Files.write(target.resolve(FilenameUtils.getName(path)), readFile(path));
+            }
+        }
+    }
+
+    private static Map<String, ObjectId> listDescriptorTreeFiles(Repository repository, ObjectId commit) throws IOException {
+        Map<String, ObjectId> files = new LinkedHashMap<>();
+        try (RevWalk revWalk = new RevWalk(repository);
+             TreeWalk treeWalk = new TreeWalk(repository)) {
+            RevTree tree = revWalk.parseCommit(commit).getTree();
+            treeWalk.addTree(tree);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilter.create(DESCRIPTOR_DIR));
+            while (treeWalk.next()) {
+                files.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+            }
+        }
+        if (files.isEmpty()) {
+            throw MessageTypeRepoException.invalidRepositoryStructure(DESCRIPTOR_DIR + " at commit " + commit.name());
+        }
+        log.debug("Listed {} file(s) below {} at {}", files.size(), DESCRIPTOR_DIR, commit.name());
+        return files;
+    }
+
+    static String repoPath(File file) {
+        return FilenameUtils.separatorsToUnix(file.getPath());
+    }
+
+    private static String parentOf(String path) {
+        int lastSeparator = path.lastIndexOf('/');
+        return lastSeparator < 0 ? "" : path.substring(0, lastSeparator);
+    }
+}
@@ -0,0 +1,83 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.lib.ObjectId;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Per-commit cache of the Avro IDL import files of the {@code _common} directories of message type registries.
+ * <p>
+ * Every schema of a registry imports the same few {@code _common} files. Instead of creating new
+ * {@link java.net.URLClassLoader URL class loaders} over the {@code _common} directories and re-reading the
+ * imports from disk for every schema, {@link AvroSchemaLoader} resolves imports through a
+ * {@link SchemaImportClassLoader} that holds the import files in memory. One such loader is cached per registry,
+ * commit and pair of {@code _common} directories - the content of a commit never changes, so entries never need to
+ * be invalidated. The cache is bounded by {@link MessageTypeSchemaCacheProperties#getMaximumImportSets()} and
+ * publishes its statistics as {@code cache.*} meters tagged {@code cache=messagetypeschemaimportcache}.
+ */
+@Slf4j
+@Component
+public class SchemaImportCache {
+
+    static final String CACHE_NAME = "messagetypeschemaimportcache";
+
+    private final Cache<ImportKey, SchemaImportClassLoader> cache;
+
+    public SchemaImportCache(MessageTypeSchemaCacheProperties properties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumImportSets())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the import class loader for the given {@code _common} directories (repository-relative paths) of
+     * {@code gitUri} at {@code commit}, reading the import files with {@code importFilesReader} on a cache miss.
+     * Nothing is cached if {@code commit} is unknown.
+     */
+    SchemaImportClassLoader getImports(String gitUri, ObjectId commit, String systemCommonDir, String rootCommonDir,
+                                       ImportFilesReader importFilesReader) throws IOException {
+        if (commit == null) {
+            return createImports(importFilesReader);
+        }
+        try {
+            return cache.get(new ImportKey(gitUri, commit, systemCommonDir, rootCommonDir), key -> {
+                try {
+                    SchemaImportClassLoader imports = createImports(importFilesReader);
+                    log.debug("Cached {} import file(s) for {} at {}", imports.size(), key.gitUri(), key.commit().name());
+                    return imports;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static SchemaImportClassLoader createImports(ImportFilesReader importFilesReader) throws IOException {
+        // Imports not found in the _common directories are resolved through the context class loader, which
+        // provides the jEAP domain event base type schemas from jeap-messaging-avro
+        return new SchemaImportClassLoader(Thread.currentThread().getContextClassLoader(), importFilesReader.read());
+    }
+
+    /**
+     * Reads the import files by file name, files of the system {@code _common} directory taking precedence.
+     */
+    @FunctionalInterface
+    interface ImportFilesReader {
+        Map<String, byte[]> read() throws IOException;
+    }
+
+    private record ImportKey(String gitUri, ObjectId commit, String systemCommonDir, String rootCommonDir) {
+    }
+}
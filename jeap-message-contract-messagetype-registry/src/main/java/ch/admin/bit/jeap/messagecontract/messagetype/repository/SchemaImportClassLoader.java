@@ -0,0 +1,101 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves Avro IDL imports of the {@code _common} directories of a message type registry from memory.
+ * <p>
+ * The Avro IDL parser resolves an import relative to the importing file first and then through its resource class
+ * loader. This loader delegates to its parent first - so schemas shipped on the classpath, e.g. the jEAP domain
+ * event base types, still win - and then serves the import files it was created with. No URLs to the file system
+ * are opened and no class is ever loaded through it.
+ */
+final class SchemaImportClassLoader extends ClassLoader {
+
+    private static final String PROTOCOL = "messagetype-import";
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final Map<String, byte[]> importFiles;
+    private final URLStreamHandler urlStreamHandler = new InMemoryUrlStreamHandler();
+
+    /**
+     * @param importFiles import file contents keyed by file name. If the same name occurs in several import
+     *                    directories, the caller passes the one that takes precedence.
+     */
+    SchemaImportClassLoader(ClassLoader parent, Map<String, byte[]> importFiles) {
+        super(parent);
+        this.importFiles = Map.copyOf(importFiles);
+    }
+
+    int size() {
+        return importFiles.size();
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        if (!importFiles.containsKey(name)) {
+            return null;
+        }
+        try {
+            return URL.of(new URI(PROTOCOL, null, "/" + name, null), urlStreamHandler);
+        } catch (URISyntaxException | MalformedURLException _) {
+            return null;
+        }
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        URL resource = findResource(name);
+        return resource == null ? Collections.emptyEnumeration() : Collections.enumeration(List.of(resource));
+    }
+
+    /**
+     * Merges the files of several import directories, earlier directories taking precedence.
+     */
+    @SafeVarargs
+    static Map<String, byte[]> merge(Map<String, byte[]>... directoryFiles) {
+        Map<String, byte[]> merged = new LinkedHashMap<>();
+        for (Map<String, byte[]> files : directoryFiles) {
+            files.forEach(merged::putIfAbsent);
+        }
+        return merged;
+    }
+
+    private final class InMemoryUrlStreamHandler extends URLStreamHandler {
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            byte[] content = importFiles.get(url.getPath().substring(1));
+            if (content == null) {
+                throw new FileNotFoundException(url.toString());
+            }
+            return new URLConnection(url) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(content);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository.github;
+
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.RepositoryProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one {@link GitHubAppCredentialsProvider} per configured GitHub repository, so that the per-request clone
+ * path and the reference cache share the memoised installation id, installation access token and app JWT instead
+ * of asking the GitHub API for new ones on every clone or refresh.
+ */
+@Component
+public class GitHubAppCredentialsProviders {
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, GitHubAppCredentialsProvider> providers = new ConcurrentHashMap<>();
+
+    public GitHubAppCredentialsProviders(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns the shared credentials provider of the GitHub repository {@code repository}, creating it from the
+     * repository's parameters on first use.
+     */
+    public GitHubAppCredentialsProvider forRepository(RepositoryProperties repository) {
+        return providers.computeIfAbsent(repository.getUri(),
+                _ -> GitHubAppCredentialsProvider.fromParameters(repository.getParameters(), meterRegistry));
+    }
+}
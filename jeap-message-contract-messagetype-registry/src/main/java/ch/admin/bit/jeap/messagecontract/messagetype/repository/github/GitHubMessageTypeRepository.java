@@ -8,8 +8,12 @@ import java.util.Map;
 public class GitHubMessageTypeRepository extends MessageTypeRepository {
 
     public GitHubMessageTypeRepository(String gitUri, Map<String, String> parameters, MeterRegistry meterRegistry) {
+        this(gitUri, GitHubAppCredentialsProvider.fromParameters(parameters, meterRegistry));
+    }
+
+    public GitHubMessageTypeRepository(String gitUri, GitHubAppCredentialsProvider credentialsProvider) {
         super(gitUri);
-        super.setCredentialsProvider(GitHubAppCredentialsProvider.fromParameters(parameters, meterRegistry));
+        super.setCredentialsProvider(credentialsProvider);
     }
 
 }
@@ -0,0 +1,152 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import ch.admin.bit.jeap.messagecontract.test.TestRegistryRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class MessageTypeRepositoryBulkheadTest {
+
+    private static final String GIT_URI = "https://example.org/registry.git";
+
+    private SimpleMeterRegistry meterRegistry;
+    private MessageTypeRepositoryBulkheadProperties properties;
+
+    @BeforeEach
+    void prepare() {
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new MessageTypeRepositoryBulkheadProperties();
+        properties.setMaxConcurrentRepositories(1);
+        properties.setMaxQueueSize(1);
+        properties.setMaxWaitMillis(10_000L);
+    }
+
+    @Test
+    void queuedRequestIsGrantedThePermitOnceItIsReleased() throws Exception {
+        MessageTypeRepositoryBulkhead bulkhead = new MessageTypeRepositoryBulkhead(properties, meterRegistry);
+        MessageTypeRepositoryBulkhead.Permit first = bulkhead.acquire(GIT_URI);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<MessageTypeRepositoryBulkhead.Permit> second =
+                    CompletableFuture.supplyAsync(() -> bulkhead.acquire(GIT_URI), executor);
+            await().atMost(Duration.ofSeconds(5)).until(() -> gauge(MessageTypeRepositoryBulkhead.QUEUE_DEPTH_GAUGE_NAME) == 1);
+            assertThat(second).isNotDone();
+
+            first.close();
+            first.close();
+            second.get().close();
+        }
+
+        assertThat(gauge(MessageTypeRepositoryBulkhead.QUEUE_DEPTH_GAUGE_NAME)).isZero();
+        assertThat(gauge(MessageTypeRepositoryBulkhead.ACTIVE_GAUGE_NAME)).isZero();
+        assertThat(meterRegistry.get(MessageTypeRepositoryBulkhead.WAIT_TIMER_NAME).tag("outcome", "acquired").timer().count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void requestIsRejectedWhenTheQueueIsFullOrTheWaitTimesOut() throws Exception {
+        properties.setMaxWaitMillis(200L);
+        MessageTypeRepositoryBulkhead bulkhead = new MessageTypeRepositoryBulkhead(properties, meterRegistry);
+
+        try (MessageTypeRepositoryBulkhead.Permit _ = bulkhead.acquire(GIT_URI);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<MessageTypeRepositoryBulkhead.Permit> queued =
+                    CompletableFuture.supplyAsync(() -> bulkhead.acquire(GIT_URI), executor);
+            await().atMost(Duration.ofSeconds(5)).until(() -> gauge(MessageTypeRepositoryBulkhead.QUEUE_DEPTH_GAUGE_NAME) == 1);
+
+            assertThatThrownBy(() -> bulkhead.acquire(GIT_URI))
+                    .isInstanceOf(MessageTypeRepositoryBusyException.class)
+                    .hasMessageContaining("queue size 1");
+            assertThat(queued).failsWithin(Duration.ofSeconds(5))
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseInstanceOf(MessageTypeRepositoryBusyException.class);
+        }
+
+        assertThat(rejections("queue-full")).isEqualTo(1);
+        assertThat(rejections("timeout")).isEqualTo(1);
+        assertThat(gauge(MessageTypeRepositoryBulkhead.ACTIVE_GAUGE_NAME)).isZero();
+    }
+
+    @Test
+    void queueBoundHoldsForConcurrentRequests() throws Exception {
+        int requests = 20;
+        MessageTypeRepositoryBulkhead bulkhead = new MessageTypeRepositoryBulkhead(properties, meterRegistry);
+        MessageTypeRepositoryBulkhead.Permit first = bulkhead.acquire(GIT_URI);
+
+        List<CompletableFuture<MessageTypeRepositoryBulkhead.Permit>> queued = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CountDownLatch start = new CountDownLatch(1);
+            for (int i = 0; i < requests; i++) {
+                queued.add(CompletableFuture.supplyAsync(() -> {
+                    awaitQuietly(start);
+                    return bulkhead.acquire(GIT_URI);
+                }, executor));
+            }
+            start.countDown();
+            await().atMost(Duration.ofSeconds(5)).ignoreExceptions().until(() -> rejections("queue-full") == requests - 1);
+            assertThat(gauge(MessageTypeRepositoryBulkhead.QUEUE_DEPTH_GAUGE_NAME)).isEqualTo(1);
+
+            first.close();
+            await().atMost(Duration.ofSeconds(5)).until(() -> queued.stream().allMatch(CompletableFuture::isDone));
+        }
+
+        List<MessageTypeRepositoryBulkhead.Permit> granted = queued.stream()
+                .filter(future -> !future.isCompletedExceptionally())
+                .map(CompletableFuture::join)
+                .toList();
+        assertThat(granted).hasSize(1);
+        granted.forEach(MessageTypeRepositoryBulkhead.Permit::close);
+        assertThat(gauge(MessageTypeRepositoryBulkhead.QUEUE_DEPTH_GAUGE_NAME)).isZero();
+    }
+
+    @Test
+    void repositoryHoldsItsPermitUntilItIsClosed() throws Exception {
+        TestRegistryRepo repo = TestRegistryRepo.createMessageTypeRegistryRepository();
+        try {
+            MessageTypeRepositoryBulkhead bulkhead = new MessageTypeRepositoryBulkhead(properties, meterRegistry);
+            MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(),
+                    meterRegistry, null, null, null, null, null, bulkhead);
+
+            try (MessageTypeRepository _ = factory.cloneRepository(repo.url())) {
+                assertThat(gauge(MessageTypeRepositoryBulkhead.ACTIVE_GAUGE_NAME)).isEqualTo(1);
+            }
+            assertThat(gauge(MessageTypeRepositoryBulkhead.ACTIVE_GAUGE_NAME)).isZero();
+
+            assertThatThrownBy(() -> factory.cloneRepository("file:///does/not/exist"))
+                    .isInstanceOf(MessageTypeRepoException.class);
+            assertThat(gauge(MessageTypeRepositoryBulkhead.ACTIVE_GAUGE_NAME)).isZero();
+        } finally {
+            repo.delete();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private double rejections(String reason) {
+        return meterRegistry.get(MessageTypeRepositoryBulkhead.REJECTION_COUNTER_NAME).tag("reason", reason).counter().count();
+    }
+}
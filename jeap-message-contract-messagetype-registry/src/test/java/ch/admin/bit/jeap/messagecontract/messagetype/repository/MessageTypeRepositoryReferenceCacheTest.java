@@ -1,22 +1,40 @@
 package ch.admin.bit.jeap.messagecontract.messagetype.repository;
 
 import ch.admin.bit.jeap.messagecontract.test.TestRegistryRepo;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.health.contributor.Status;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 
 class MessageTypeRepositoryReferenceCacheTest {
 
@@ -104,6 +122,24 @@ class MessageTypeRepositoryReferenceCacheTest {
         assertThat(cache.getCacheRepoDir(repoUrl)).isPresent();
     }
 
+    @Test
+    void refreshAllRecreatesInvalidCacheEntryThroughStagingDirectory() throws Exception {
+        MessageTypeRepositoryReferenceCache cache = newEnabledCache(repoUrl);
+        cache.refreshAll();
+        File cacheDir = cache.getCacheRepoDir(repoUrl).orElseThrow();
+        FileUtils.delete(new File(cacheDir, "HEAD"));
+        File leftoverStagingDir = new File(cacheDir.getParentFile(),
+                cacheDir.getName() + MessageTypeRepositoryReferenceCache.STAGING_SUFFIX);
+        Files.createDirectories(leftoverStagingDir.toPath());
+        Files.writeString(leftoverStagingDir.toPath().resolve("partial"), "interrupted clone");
+
+        cache.refreshAll();
+
+        assertThat(cache.getCacheRepoDir(repoUrl)).contains(cacheDir);
+        assertThat(readMasterSha(cacheDir).name()).isEqualTo(repo.revision());
+        assertThat(cacheRoot).isDirectoryNotContaining(f -> f.getName().startsWith(cacheDir.getName() + "."));
+    }
+
     @Test
     void refreshAllFailedRefreshDoesNotThrow() {
         MessageTypeRepositoryReferenceCache cache = newEnabledCache("file:///this-does-not-exist");
@@ -113,6 +149,81 @@ class MessageTypeRepositoryReferenceCacheTest {
         assertThat(cache.getCacheRepoDir("file:///this-does-not-exist")).isEmpty();
     }
 
+    @Test
+    void refreshAllRefreshesEveryConfiguredRepository() throws Exception {
+        TestRegistryRepo otherRepo = TestRegistryRepo.createMessageTypeRegistryRepository();
+        try {
+            MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+            cacheProps.setDirectory(cacheRoot.toString());
+            cacheProps.setRefreshParallelism(2);
+            MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                    cacheProps, propertiesFor(repoUrl, otherRepo.url()), new SimpleMeterRegistry());
+
+            cache.refreshAll();
+
+            assertThat(cache.getCacheRepoDir(repoUrl)).isPresent();
+            assertThat(cache.getCacheRepoDir(otherRepo.url())).isPresent();
+        } finally {
+            otherRepo.delete();
+        }
+    }
+
+    @Test
+    void refreshOneIsNotBlockedByRefreshOfAnotherRepository() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+        cacheProps.setDirectory(cacheRoot.toString());
+        String otherUrl = "https://example.invalid/other.git";
+        MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor(repoUrl, otherUrl), meterRegistry);
+
+        ReentrantLock otherLock = cache.refreshLockFor(otherUrl);
+        otherLock.lock();
+        try {
+            CompletableFuture.runAsync(() -> cache.refreshOne(repoUrl)).get(30, TimeUnit.SECONDS);
+        } finally {
+            otherLock.unlock();
+        }
+
+        assertThat(cache.getCacheRepoDir(repoUrl)).isPresent();
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.LOCK_WAIT_TIMER_NAME)
+                .tag("repository", repoUrl).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentRefreshOneCallsShareOneUpstreamFetch() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+        cacheProps.setDirectory(cacheRoot.toString());
+        MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor(repoUrl), meterRegistry);
+
+        // Keep the first refresh waiting for its lock so that the other callers find it in flight
+        ReentrantLock lock = cache.refreshLockFor(repoUrl);
+        List<Future<?>> refreshes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            lock.lock();
+            try {
+                refreshes.add(executor.submit(() -> cache.refreshOne(repoUrl)));
+                await().atMost(Duration.ofSeconds(10)).until(lock::hasQueuedThreads);
+                for (int i = 0; i < 4; i++) {
+                    refreshes.add(executor.submit(() -> cache.refreshOne(repoUrl)));
+                }
+                await().atMost(Duration.ofSeconds(10)).until(() -> coalescedRefreshes(meterRegistry) == 4);
+            } finally {
+                lock.unlock();
+            }
+            for (Future<?> refresh : refreshes) {
+                refresh.get(30, TimeUnit.SECONDS);
+            }
+        }
+
+        assertThat(cache.getCacheRepoDir(repoUrl)).isPresent();
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.LOCK_WAIT_TIMER_NAME)
+                .tag("repository", repoUrl).timer().count()).isEqualTo(1);
+        assertThat(coalescedRefreshes(meterRegistry)).isEqualTo(4);
+    }
+
     @Test
     void factoryClonesKnownRepoUsingAlternatesAndSchemaLoadingStillWorks() throws Exception {
         MessageTypeRepositoryReferenceCache cache = newEnabledCache(repoUrl);
@@ -254,6 +365,344 @@ class MessageTypeRepositoryReferenceCacheTest {
         assertThat(cachedMasterAfter.name()).isEqualTo(upstreamMasterAfter.name());
     }
 
+    @Test
+    void factoryWorktreeFreeModeServesSchemasWithoutProvisioningAWorktree() throws Exception {
+        MessageTypeRepositoryReferenceCache cache = newWorktreeFreeCache(repoUrl);
+        cache.refreshAll();
+
+        MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(
+                propertiesFor(repoUrl), new SimpleMeterRegistry(), cache);
+
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            assertThat(messageTypeRepository.gitRepoPath).isNull();
+
+            String schemaFromBranch = messageTypeRepository
+                    .getSchemaAsAvroProtocolJson("master", null, "ActivZoneEnteredEvent", "1.0.0");
+            assertThat(schemaFromBranch).contains("ZoneReference");
+
+            String schemaFromCommit = messageTypeRepository
+                    .getSchemaAsAvroProtocolJson(null, repo.revision(), "ActivZoneEnteredEvent", "1.0.0");
+            assertThat(schemaFromCommit).contains("ZoneReference");
+
+            MessageTypeRepository.MessageTypeSnapshot snapshot = messageTypeRepository
+                    .getMessageTypeSnapshot("master", "ActivZoneEnteredEvent", "activ");
+            assertThat(snapshot.commitHash()).isEqualTo(repo.revision());
+            assertThat(snapshot.versions()).contains("1.0.0");
+        }
+    }
+
+    @Test
+    void factoryWorktreeFreeModeRefreshesCacheForUnknownCommit() throws Exception {
+        MessageTypeRepositoryReferenceCache cache = newWorktreeFreeCache(repoUrl);
+        cache.refreshAll();
+
+        Path newDescriptor = repo.repoDir().resolve("descriptor/activ/event/freshevent/FreshEvent.json");
+        repo.addAndCommitFile(newDescriptor, "{\"messageTypeName\":\"FreshEvent\"}");
+        String newCommitSha;
+        try (Git upstream = Git.open(repo.repoDir().toFile())) {
+            newCommitSha = upstream.getRepository().resolve("refs/heads/master").name();
+        }
+
+        MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(
+                propertiesFor(repoUrl), new SimpleMeterRegistry(), cache);
+
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            String schemaFromNewCommit = messageTypeRepository
+                    .getSchemaAsAvroProtocolJson(null, newCommitSha, "ActivZoneEnteredEvent", "1.0.0");
+            assertThat(schemaFromNewCommit).contains("ZoneReference");
+        }
+    }
+
+    @Test
+    void acquireRepositorySharesOneGenerationUntilTheNextRefresh() throws Exception {
+        MessageTypeRepositoryReferenceCache cache = newEnabledCache(repoUrl);
+        cache.refreshAll();
+
+        CacheRepositoryGeneration first = cache.acquireRepository(repoUrl).orElseThrow();
+        try (CacheRepositoryGeneration second = cache.acquireRepository(repoUrl).orElseThrow()) {
+            assertThat(second).isSameAs(first);
+            assertThat(second.exactRef("refs/heads/master").getObjectId().name()).isEqualTo(repo.revision());
+        }
+
+        Path newDescriptor = repo.repoDir().resolve("descriptor/activ/event/nextgenevent/NextGenEvent.json");
+        repo.addAndCommitFile(newDescriptor, "{\"messageTypeName\":\"NextGenEvent\"}");
+        cache.refreshOne(repoUrl);
+
+        try (CacheRepositoryGeneration next = cache.acquireRepository(repoUrl).orElseThrow()) {
+            assertThat(next.generation()).isGreaterThan(first.generation());
+            assertThat(next.exactRef("refs/heads/master").getObjectId().name()).isNotEqualTo(repo.revision());
+            // The retired generation stays usable by its borrower until released
+            assertThat(first.isClosed()).isFalse();
+            assertThat(first.exactRef("refs/heads/master").getObjectId().name()).isEqualTo(repo.revision());
+        }
+        first.close();
+        assertThat(first.isClosed()).isTrue();
+    }
+
+    @Test
+    void lookupsRefreshesAndEntryAgeArePublishedAndReportedAsHealth() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+        cacheProps.setDirectory(cacheRoot.toString());
+        cacheProps.setRefreshDebounceMillis(60_000L);
+        MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor(repoUrl), meterRegistry);
+        ReferenceCacheHealthIndicator health = new ReferenceCacheHealthIndicator(cache, repoUrl, Duration.ofHours(1));
+        assertThat(health.health().getStatus()).isEqualTo(Status.UNKNOWN);
+        cache.refreshAll();
+
+        Path newDescriptor = repo.repoDir().resolve("descriptor/activ/event/metricsevent/MetricsEvent.json");
+        repo.addAndCommitFile(newDescriptor, "{\"messageTypeName\":\"MetricsEvent\"}");
+        String newCommitSha;
+        try (Git upstream = Git.open(repo.repoDir().toFile())) {
+            newCommitSha = upstream.getRepository().resolve("refs/heads/master").name();
+        }
+        MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(propertiesFor(repoUrl), meterRegistry, cache);
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            messageTypeRepository.getSchemaAsAvroProtocolJson(null, newCommitSha, "ActivZoneEnteredEvent", "1.0.0");
+            messageTypeRepository.getSchemaAsAvroProtocolJson("master", null, "ActivZoneEnteredEvent", "1.0.0");
+        }
+        assertThat(cache.getCacheRepoDir("https://example.invalid/unconfigured.git")).isEmpty();
+
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.LOOKUP_COUNTER_NAME)
+                .tag("repository", repoUrl).tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.LOOKUP_COUNTER_NAME)
+                .tag("repository", MessageTypeRepositoryReferenceCache.UNCONFIGURED_REPOSITORY_TAG).tag("result", "miss")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.MISS_REFRESH_COUNTER_NAME)
+                .tag("repository", repoUrl).counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.SKIPPED_REFRESH_COUNTER_NAME)
+                .tag("reason", "debounce").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MessageTypeRepository.PHASE_TIMER_NAME).tag("phase", "alternates").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get(MessageTypeRepository.PHASE_TIMER_NAME).tag("phase", "resolve").timer().count())
+                .isEqualTo(2);
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.ENTRY_REFRESH_AGE_GAUGE_NAME)
+                .tag("repository", repoUrl).gauge().value()).isBetween(0.0, 60.0);
+
+        assertThat(health.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(health.health().getDetails()).containsKeys("lastRefresh", "ageSeconds", "sizeBytes");
+        assertThat(new ReferenceCacheHealthIndicator(cache, repoUrl, Duration.ZERO).health().getStatus())
+                .isEqualTo(ReferenceCacheHealthIndicator.STALE);
+        assertThat(ReferenceCacheHealthIndicator.contributorName("https://github.com/org/registry.git"))
+                .isEqualTo("github.com-org-registry.git");
+    }
+
+    @Test
+    void unconfiguredRepositoryIsAdmittedAfterRepeatedRequests() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeRepositoryCacheProperties cacheProps = admittingCacheProperties(Long.MAX_VALUE);
+        MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor("https://example.invalid/other.git"), meterRegistry);
+        MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(
+                propertiesFor("https://example.invalid/other.git"), meterRegistry, cache);
+
+        for (int i = 0; i < 2; i++) {
+            try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+                assertThat(messageTypeRepository.gitRepoPath.toPath().resolve(".git/objects/info/alternates")).doesNotExist();
+            }
+        }
+        await().atMost(Duration.ofSeconds(30)).until(() -> cache.getCacheRepoDir(repoUrl).isPresent());
+
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            assertThat(messageTypeRepository.gitRepoPath.toPath().resolve(".git/objects/info/alternates")).exists();
+            assertThat(messageTypeRepository.getSchemaAsAvroProtocolJson("master", null, "ActivZoneEnteredEvent", "1.0.0"))
+                    .contains("ZoneReference");
+        }
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.ADMISSION_COUNTER_NAME).counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("messagetyperepositorycache.admitted.repositories").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void leastRecentlyUsedAdmittedRepositoryIsEvictedWhenDiskBudgetIsExceeded() throws Exception {
+        TestRegistryRepo otherRepo = TestRegistryRepo.createMessageTypeRegistryRepository();
+        try {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            MessageTypeRepositoryCacheProperties cacheProps = admittingCacheProperties(Long.MAX_VALUE);
+            MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                    cacheProps, propertiesFor("https://example.invalid/other.git"), meterRegistry);
+            admit(cache, repoUrl);
+            File evictedMirror = cache.getCacheRepoDir(repoUrl).orElseThrow();
+            cache.enforceDiskBudget();
+            double mirrorSize = meterRegistry.get("messagetyperepositorycache.admitted.size").gauge().value();
+            assertThat(mirrorSize).isPositive();
+
+            cacheProps.setUnconfiguredDiskBudgetBytes((long) (mirrorSize * 1.5));
+            admit(cache, otherRepo.url());
+
+            await().atMost(Duration.ofSeconds(30)).until(() -> {
+                Counter evictions = meterRegistry.find(MessageTypeRepositoryReferenceCache.EVICTION_COUNTER_NAME).counter();
+                return evictions != null && evictions.count() == 1;
+            });
+            assertThat(evictedMirror).doesNotExist();
+            assertThat(cache.getCacheRepoDir(repoUrl)).isEmpty();
+            assertThat(cache.getCacheRepoDir(otherRepo.url())).isPresent();
+            assertThat(cacheRoot).isDirectoryNotContaining(f -> f.getName().endsWith(MessageTypeRepositoryReferenceCache.RETIRED_SUFFIX));
+        } finally {
+            otherRepo.delete();
+        }
+    }
+
+    @Test
+    void admittedRepositoryIsNotEvictedWhileARepositoryReadsFromIt() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeRepositoryCacheProperties cacheProps = admittingCacheProperties(Long.MAX_VALUE);
+        MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor("https://example.invalid/other.git"), meterRegistry);
+        MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(
+                propertiesFor("https://example.invalid/other.git"), meterRegistry, cache);
+        admit(cache, repoUrl);
+        File mirror = cache.getCacheRepoDir(repoUrl).orElseThrow();
+        cacheProps.setUnconfiguredDiskBudgetBytes(1L);
+
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            assertThat(messageTypeRepository.gitRepoPath.toPath().resolve(".git/objects/info/alternates")).exists();
+
+            cache.enforceDiskBudget();
+
+            assertThat(mirror).isDirectory();
+            assertThat(meterRegistry.find(MessageTypeRepositoryReferenceCache.EVICTION_COUNTER_NAME).counter()).isNull();
+            assertThat(messageTypeRepository.getSchemaAsAvroProtocolJson(null, repo.revision(), "ActivZoneEnteredEvent", "1.0.0"))
+                    .contains("ZoneReference");
+        }
+
+        cache.enforceDiskBudget();
+
+        assertThat(mirror).doesNotExist();
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.EVICTION_COUNTER_NAME).counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void repositoryWhoseMirrorCannotBeMovedAsideStaysAdmittedAndIsEvictedByALaterPass() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeRepositoryCacheProperties cacheProps = admittingCacheProperties(Long.MAX_VALUE);
+        AtomicBoolean failMove = new AtomicBoolean(true);
+        MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor("https://example.invalid/other.git"), meterRegistry) {
+            @Override
+            void moveAside(File cacheDir, File retiredDir) throws IOException {
+                if (failMove.get()) {
+                    throw new IOException("simulated move failure");
+                }
+                super.moveAside(cacheDir, retiredDir);
+            }
+        };
+        admit(cache, repoUrl);
+        File mirror = cache.getCacheRepoDir(repoUrl).orElseThrow();
+        cacheProps.setUnconfiguredDiskBudgetBytes(1L);
+
+        cache.enforceDiskBudget();
+
+        assertThat(mirror).isDirectory();
+        assertThat(cache.getCacheRepoDir(repoUrl)).contains(mirror);
+        assertThat(meterRegistry.get("messagetyperepositorycache.admitted.size").gauge().value()).isPositive();
+        assertThat(meterRegistry.find(MessageTypeRepositoryReferenceCache.EVICTION_COUNTER_NAME).counter()).isNull();
+
+        failMove.set(false);
+        cache.enforceDiskBudget();
+
+        assertThat(mirror).doesNotExist();
+        assertThat(meterRegistry.get("messagetyperepositorycache.admitted.size").gauge().value()).isZero();
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.EVICTION_COUNTER_NAME).counter().count()).isEqualTo(1);
+    }
+
+    private static void admit(MessageTypeRepositoryReferenceCache cache, String uri) {
+        cache.considerForAdmission(uri);
+        cache.considerForAdmission(uri);
+        await().atMost(Duration.ofSeconds(30)).until(() -> cache.getCacheRepoDir(uri).isPresent());
+    }
+
+    private MessageTypeRepositoryCacheProperties admittingCacheProperties(long diskBudgetBytes) {
+        MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+        cacheProps.setDirectory(cacheRoot.toString());
+        cacheProps.setRefreshDebounceMillis(0L);
+        cacheProps.setAdmitUnconfiguredRepositories(true);
+        cacheProps.setUnconfiguredAdmissionThreshold(2);
+        cacheProps.setUnconfiguredDiskBudgetBytes(diskBudgetBytes);
+        return cacheProps;
+    }
+
+    @Test
+    void shallowMirrorFetchesCommitsBeyondItsBoundaryOnDemand() throws Exception {
+        Path upstreamDir = Files.createTempDirectory("shallow-upstream");
+        try (Git upstream = Git.init().setDirectory(upstreamDir.toFile()).setInitialBranch("master").call()) {
+            upstream.getRepository().getConfig().setBoolean("uploadpack", null, "allowreachablesha1inwant", true);
+            upstream.getRepository().getConfig().save();
+            RevCommit oldCommit = commitFile(upstream, "old.txt", Instant.now().minus(Duration.ofDays(400)));
+            RevCommit recentCommit = commitFile(upstream, "recent.txt", Instant.now());
+            String upstreamUrl = upstreamDir.toUri().toString();
+
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+            cacheProps.setDirectory(cacheRoot.toString());
+            cacheProps.setMirrorShallowSinceDays(30);
+            MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                    cacheProps, propertiesFor(upstreamUrl), meterRegistry);
+            cache.refreshAll();
+
+            File cacheDir = cache.getCacheRepoDir(upstreamUrl).orElseThrow();
+            try (Git mirror = Git.open(cacheDir)) {
+                assertThat(mirror.getRepository().getObjectDatabase().has(recentCommit)).isTrue();
+                assertThat(mirror.getRepository().getObjectDatabase().has(oldCommit)).isFalse();
+            }
+
+            cache.fetchCommit(upstreamUrl, oldCommit.name());
+
+            try (CacheRepositoryGeneration generation = cache.acquireRepository(upstreamUrl).orElseThrow()) {
+                assertThat(generation.repository().getObjectDatabase().has(oldCommit)).isTrue();
+            }
+            assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.ENTRY_REFRESH_TIMER_NAME)
+                    .tag("operation", "clone").timer().count()).isEqualTo(1);
+            assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.ENTRY_REFRESH_TIMER_NAME)
+                    .tag("operation", "commitfetch").timer().count()).isEqualTo(1);
+            assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.ENTRY_SIZE_GAUGE_NAME).gauge().value()).isPositive();
+        } finally {
+            FileUtils.deleteDirectory(upstreamDir.toFile());
+        }
+    }
+
+    private static RevCommit commitFile(Git git, String fileName, Instant when) throws Exception {
+        Files.writeString(git.getRepository().getWorkTree().toPath().resolve(fileName), fileName);
+        git.add().addFilepattern(fileName).call();
+        PersonIdent ident = new PersonIdent("test", "test@mail.com", when, ZoneOffset.UTC);
+        return git.commit().setMessage(fileName).setAuthor(ident).setCommitter(ident).call();
+    }
+
+    @Test
+    void missingEntryIsSeededFromExportedBundleAndFetchesOnlyTheDelta() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+        cacheProps.setDirectory(cacheRoot.resolve("mirrors").toString());
+        cacheProps.setBundleDirectory(cacheRoot.resolve("bundles").toString());
+        MessageTypeRepositoryReferenceCache cache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor(repoUrl), meterRegistry);
+        cache.refreshAll();
+        File cacheDir = cache.getCacheRepoDir(repoUrl).orElseThrow();
+        assertThat(cacheRoot.resolve("bundles").resolve(cacheDir.getName() + ".bundle")).isRegularFile();
+        cache.close();
+
+        // A new instance starts with an empty cache directory while upstream has moved on
+        FileUtils.deleteDirectory(cacheDir);
+        repo.addAndCommitFile(repo.repoDir().resolve("descriptor/activ/event/bundleevent/BundleEvent.json"),
+                "{\"messageTypeName\":\"BundleEvent\"}");
+        ObjectId upstreamHead;
+        try (Git upstream = Git.open(repo.repoDir().toFile())) {
+            upstreamHead = upstream.getRepository().resolve("refs/heads/master");
+        }
+        MessageTypeRepositoryReferenceCache restartedCache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor(repoUrl), meterRegistry);
+        restartedCache.refreshAll();
+
+        assertThat(readMasterSha(restartedCache.getCacheRepoDir(repoUrl).orElseThrow())).isEqualTo(upstreamHead);
+        try (Git mirror = Git.open(cacheDir)) {
+            assertThat(mirror.getRepository().getConfig().getString("remote", "origin", "url")).isEqualTo(repoUrl);
+        }
+        assertThat(meterRegistry.get(MessageTypeRepositoryReferenceCache.ENTRY_REFRESH_TIMER_NAME)
+                .tag("operation", "bundle").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ReferenceCacheBundles.BUNDLE_AGE_SUMMARY_NAME).summary().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ReferenceCacheBundles.FETCHED_BYTES_SUMMARY_NAME).summary().totalAmount()).isPositive();
+    }
+
     @Test
     void refreshIfStaleDebouncesConcurrentCallsWithinWindow() {
         MessageTypeRepositoryReferenceCache cache = newEnabledCache(repoUrl, 60_000L);
@@ -283,15 +732,31 @@ class MessageTypeRepositoryReferenceCacheTest {
                 cacheProps, propertiesFor(knownUri), new SimpleMeterRegistry());
     }
 
-    private MessageTypeRepositoryProperties propertiesFor(String uri) {
+    private MessageTypeRepositoryReferenceCache newWorktreeFreeCache(String knownUri) {
+        MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+        cacheProps.setDirectory(cacheRoot.toString());
+        cacheProps.setRefreshDebounceMillis(0L);
+        cacheProps.setWorktreeFree(true);
+        return new MessageTypeRepositoryReferenceCache(
+                cacheProps, propertiesFor(knownUri), new SimpleMeterRegistry());
+    }
+
+    private MessageTypeRepositoryProperties propertiesFor(String... uris) {
         MessageTypeRepositoryProperties props = new MessageTypeRepositoryProperties();
-        RepositoryProperties repoProps = new RepositoryProperties();
-        repoProps.setUri(uri);
-        repoProps.setType(RepositoryProperties.RepositoryType.NONE);
-        props.setRepositories(List.of(repoProps));
+        props.setRepositories(Arrays.stream(uris).map(uri -> {
+            RepositoryProperties repoProps = new RepositoryProperties();
+            repoProps.setUri(uri);
+            repoProps.setType(RepositoryProperties.RepositoryType.NONE);
+            return repoProps;
+        }).toList());
         return props;
     }
 
+    private static double coalescedRefreshes(SimpleMeterRegistry meterRegistry) {
+        Counter counter = meterRegistry.find(MessageTypeRepositoryReferenceCache.COALESCED_COUNTER_NAME).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
     private ObjectId readMasterSha(File cacheDir) throws Exception {
         try (Git git = Git.open(cacheDir)) {
             return git.getRepository().resolve("refs/heads/master");
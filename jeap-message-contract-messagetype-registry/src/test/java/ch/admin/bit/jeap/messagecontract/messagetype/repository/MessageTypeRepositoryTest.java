@@ -3,12 +3,14 @@ package ch.admin.bit.jeap.messagecontract.messagetype.repository;
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.github.GitHubMessageTypeRepository;
 import ch.admin.bit.jeap.messagecontract.test.TestRegistryRepo;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.junit.jupiter.api.*;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Map;
@@ -123,6 +125,41 @@ class MessageTypeRepositoryTest {
         }
     }
 
+    @Test
+    void descriptorsAreIndexedOncePerCommit() throws Exception {
+        MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(), new SimpleMeterRegistry());
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            messageTypeRepository.getSchemaAsAvroProtocolJson(MASTER, null, ACTIV_ZONE_ENTERED_EVENT, VERSION_1_0_0);
+
+            // Same commit: the descriptor index is reused, so the worktree descriptor is not read again
+            Files.delete(messageTypeRepository.gitRepoPath.toPath()
+                    .resolve("descriptor/activ/event/activzoneenteredevent/ActivZoneEnteredEvent.json"));
+            String schemaJson = messageTypeRepository
+                    .getSchemaAsAvroProtocolJson(null, repo.revision(), ACTIV_ZONE_ENTERED_EVENT, VERSION_2_0_0);
+            assertTrue(schemaJson.contains("JourneyActivationRequestReference"));
+            assertEquals(List.of(VERSION_1_0_0, VERSION_2_0_0), messageTypeRepository
+                    .getMessageTypeVersions(MASTER, null, ACTIV_ZONE_ENTERED_EVENT, "activ"));
+        }
+    }
+
+    @Test
+    void commonImportsAreReadOncePerCommit() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(), meterRegistry);
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            assertTrue(messageTypeRepository.getSchemaAsAvroProtocolJson(MASTER, null, ACTIV_ZONE_ENTERED_EVENT, VERSION_1_0_0)
+                    .contains(ZONE_REFERENCE), ZONE_REFERENCE_NOT_FOUND);
+
+            // Same commit: the _common imports are served from memory, so they are not read from the worktree again
+            FileUtils.deleteDirectory(messageTypeRepository.gitRepoPath.toPath().resolve("descriptor/activ/_common").toFile());
+            FileUtils.deleteDirectory(messageTypeRepository.gitRepoPath.toPath().resolve("descriptor/_common").toFile());
+            assertTrue(messageTypeRepository.getSchemaAsAvroProtocolJson(null, repo.revision(), ACTIV_ZONE_ENTERED_EVENT, VERSION_1_0_0)
+                    .contains(ZONE_REFERENCE), ZONE_REFERENCE_NOT_FOUND);
+        }
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", SchemaImportCache.CACHE_NAME).tag("result", "miss").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", SchemaImportCache.CACHE_NAME).tag("result", "hit").functionCounter().count());
+    }
+
     @Test
     void clonesRepoBadUrl() {
         MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(), new SimpleMeterRegistry());
@@ -234,6 +271,33 @@ class MessageTypeRepositoryTest {
         }
     }
 
+    @Test
+    void getSchemasAsAvroProtocolJsonGroupsReferencesByResolvedCommit() throws Exception {
+        String originalSha = repo.revision();
+        Path newEventDir = repo.repoDir().resolve("descriptor/activ/event/newevent");
+        repo.addAndCommitFile(newEventDir.resolve("NewEvent_v1.0.0.avdl"), NEW_EVENT_AVDL);
+        repo.addAndCommitFile(newEventDir.resolve("NewEvent.json"), NEW_EVENT_DESCRIPTOR_JSON);
+
+        MessageTypeRepository.SchemaReference originalV1 =
+                new MessageTypeRepository.SchemaReference(null, originalSha, ACTIV_ZONE_ENTERED_EVENT, VERSION_1_0_0);
+        MessageTypeRepository.SchemaReference newEventOnMaster =
+                new MessageTypeRepository.SchemaReference(MASTER, null, NEW_EVENT, VERSION_1_0_0);
+        MessageTypeRepository.SchemaReference originalV2 =
+                new MessageTypeRepository.SchemaReference(MASTER, originalSha, ACTIV_ZONE_ENTERED_EVENT, VERSION_2_0_0);
+
+        MessageTypeRepositoryFactory factory = new MessageTypeRepositoryFactory(new MessageTypeRepositoryProperties(), new SimpleMeterRegistry());
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            Map<MessageTypeRepository.SchemaReference, String> schemas = messageTypeRepository
+                    .getSchemasAsAvroProtocolJson(List.of(originalV1, newEventOnMaster, originalV2));
+
+            assertEquals(List.of(originalV1, originalV2, newEventOnMaster), List.copyOf(schemas.keySet()),
+                    "schemas should be grouped by commit, in the order the commits were first referenced");
+            assertTrue(schemas.get(originalV1).contains(ZONE_REFERENCE), ZONE_REFERENCE_NOT_FOUND);
+            assertTrue(schemas.get(originalV2).contains("JourneyActivationRequestReference"));
+            assertTrue(schemas.get(newEventOnMaster).contains(NEW_EVENT));
+        }
+    }
+
     @Test
     void checkoutCommitOlderCommitOutsideShallowDepth() throws Exception {
         String originalSha = repo.revision();
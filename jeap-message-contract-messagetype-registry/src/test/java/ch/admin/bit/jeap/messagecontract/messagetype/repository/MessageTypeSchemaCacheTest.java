@@ -0,0 +1,56 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageTypeSchemaCacheTest {
+
+    private static final String REGISTRY = "https://example.invalid/registry.git";
+    private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+    private static final String TYPE = "ActivZoneEnteredEvent";
+    private static final String VERSION = "1.0.0";
+
+    @Test
+    void cachesSchemasForPinnedCommitsAndRecordsHitsAndMisses() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageTypeSchemaCache cache = new MessageTypeSchemaCache(new MessageTypeSchemaCacheProperties(), meterRegistry);
+
+        assertThat(cache.get(REGISTRY, COMMIT, TYPE, VERSION)).isEmpty();
+        cache.put(REGISTRY, COMMIT, TYPE, VERSION, "{\"protocol\":\"x\"}");
+
+        assertThat(cache.get(REGISTRY, COMMIT.toUpperCase(), TYPE, VERSION)).contains("{\"protocol\":\"x\"}");
+        assertThat(cache.get(REGISTRY, COMMIT, TYPE, "2.0.0")).isEmpty();
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void doesNotCacheBranchOrAbbreviatedCommitReferences() {
+        MessageTypeSchemaCache cache = new MessageTypeSchemaCache(new MessageTypeSchemaCacheProperties(), new SimpleMeterRegistry());
+
+        cache.put(REGISTRY, null, TYPE, VERSION, "schema");
+        cache.put(REGISTRY, "0123456", TYPE, VERSION, "schema");
+
+        assertThat(cache.get(REGISTRY, null, TYPE, VERSION)).isEmpty();
+        assertThat(cache.get(REGISTRY, "0123456", TYPE, VERSION)).isEmpty();
+    }
+
+    @Test
+    void schemasAreWeighedByTheirUtf8EncodedSize() {
+        assertThat(MessageTypeSchemaCache.weigh("{\"doc\":\"abc\"}")).isEqualTo(13);
+        assertThat(MessageTypeSchemaCache.weigh("{\"doc\":\"Zürich\"}")).isEqualTo(17);
+    }
+
+    @Test
+    void disabledCacheNeverReturnsEntries() {
+        MessageTypeSchemaCacheProperties properties = new MessageTypeSchemaCacheProperties();
+        properties.setEnabled(false);
+        MessageTypeSchemaCache cache = new MessageTypeSchemaCache(properties, new SimpleMeterRegistry());
+
+        cache.put(REGISTRY, COMMIT, TYPE, VERSION, "schema");
+
+        assertThat(cache.get(REGISTRY, COMMIT, TYPE, VERSION)).isEmpty();
+    }
+}
@@ -0,0 +1,117 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import ch.admin.bit.jeap.messagecontract.test.TestRegistryRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class MessageTypeSchemaPrecompilerTest {
+
+    private static final String MESSAGE_TYPE = "ActivZoneEnteredEvent";
+
+    @TempDir
+    Path cacheRoot;
+
+    private TestRegistryRepo repo;
+    private String repoUrl;
+    private SimpleMeterRegistry meterRegistry;
+    private MessageTypeRepositoryReferenceCache referenceCache;
+    private MessageTypeSchemaCache schemaCache;
+    private MessageTypeRepositoryBulkhead bulkhead;
+    private MessageTypeRepositoryFactory factory;
+    private MessageTypeSchemaPrecompiler precompiler;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        repo = TestRegistryRepo.createMessageTypeRegistryRepository();
+        repoUrl = repo.url();
+        meterRegistry = new SimpleMeterRegistry();
+
+        MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+        cacheProps.setDirectory(cacheRoot.toString());
+        // Keep branch references from triggering an eager refresh right after the initial one
+        cacheProps.setRefreshDebounceMillis(60_000L);
+        MessageTypeRepositoryProperties repositoryProperties = propertiesFor(repoUrl);
+        referenceCache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, repositoryProperties, meterRegistry);
+        referenceCache.refreshAll();
+        schemaCache = new MessageTypeSchemaCache(new MessageTypeSchemaCacheProperties(), meterRegistry);
+        // A single interactive permit without queue, so that any permit taken by pre-compilation rejects requests
+        bulkhead = new MessageTypeRepositoryBulkhead(new MessageTypeRepositoryBulkheadProperties(true, 1, 0, 0), meterRegistry);
+        factory = new MessageTypeRepositoryFactory(repositoryProperties, meterRegistry, referenceCache, null, null, schemaCache, null, bulkhead);
+
+        MessageTypeSchemaPrecompilationProperties precompilationProperties = new MessageTypeSchemaPrecompilationProperties();
+        precompilationProperties.setEnabled(true);
+        precompiler = new MessageTypeSchemaPrecompiler(precompilationProperties, referenceCache, factory, schemaCache, meterRegistry);
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        precompiler.close();
+        repo.delete();
+    }
+
+    @Test
+    void precompilesEveryVersionAtTheBranchTips() {
+        precompiler.precompile(repoUrl);
+
+        assertThat(schemaCache.get(repoUrl, repo.revision(), MESSAGE_TYPE, "1.0.0")).hasValueSatisfying(
+                schema -> assertThat(schema).contains("ZoneReference"));
+        assertThat(schemaCache.get(repoUrl, repo.revision(), MESSAGE_TYPE, "2.0.0")).isPresent();
+        assertThat(meterRegistry.get(MessageTypeSchemaPrecompiler.SCHEMAS_COUNTER_NAME).tag("result", "compiled")
+                .counter().count()).isGreaterThanOrEqualTo(2);
+        assertThat(meterRegistry.get(MessageTypeSchemaPrecompiler.PENDING_GAUGE_NAME).gauge().value()).isZero();
+        assertThat(meterRegistry.get(MessageTypeSchemaPrecompiler.TIMER_NAME).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void branchReferencesAreServedFromPrecompiledSchemas() throws Exception {
+        precompiler.precompile(repoUrl);
+
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            // Nothing is read from the worktree for schemas that were pre-compiled at the branch tip
+            FileUtils.deleteDirectory(messageTypeRepository.gitRepoPath.toPath().resolve("descriptor").toFile());
+            assertThat(messageTypeRepository.getSchemaAsAvroProtocolJson("master", null, MESSAGE_TYPE, "1.0.0"))
+                    .contains("ZoneReference");
+        }
+    }
+
+    @Test
+    void precompilationDoesNotTakeBulkheadPermits() {
+        try (MessageTypeRepository interactiveRepository = factory.cloneRepository(repoUrl)) {
+            precompiler.precompile(repoUrl);
+
+            assertThat(schemaCache.get(repoUrl, repo.revision(), MESSAGE_TYPE, "2.0.0")).isPresent();
+            assertThat(meterRegistry.get(MessageTypeRepositoryBulkhead.ACTIVE_GAUGE_NAME).gauge().value()).isEqualTo(1);
+        }
+        assertThat(meterRegistry.find(MessageTypeRepositoryBulkhead.REJECTION_COUNTER_NAME).counter()).isNull();
+    }
+
+    @Test
+    void cacheRefreshSchedulesPrecompilationInTheBackground() {
+        precompiler.onCacheRefreshed(new MessageTypeRepositoryCacheRefreshedEvent(
+                repoUrl, referenceCache.getCacheRepoDir(repoUrl).orElseThrow()));
+
+        await().atMost(Duration.ofSeconds(30)).until(() ->
+                schemaCache.get(repoUrl, repo.revision(), MESSAGE_TYPE, "2.0.0").isPresent());
+    }
+
+    private static MessageTypeRepositoryProperties propertiesFor(String uri) {
+        RepositoryProperties repositoryProperties = new RepositoryProperties();
+        repositoryProperties.setUri(uri);
+        repositoryProperties.setType(RepositoryProperties.RepositoryType.NONE);
+        MessageTypeRepositoryProperties properties = new MessageTypeRepositoryProperties();
+        properties.setRepositories(List.of(repositoryProperties));
+        return properties;
+    }
+}
@@ -0,0 +1,158 @@
+package ch.admin.bit.jeap.messagecontract.messagetype.repository;
+
+import ch.admin.bit.jeap.messagecontract.test.TestRegistryRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageTypeWorktreePoolTest {
+
+    private static final String DESCRIPTOR = "descriptor/activ/event/activzoneenteredevent/ActivZoneEnteredEvent.json";
+
+    @TempDir
+    Path cacheRoot;
+
+    private TestRegistryRepo repo;
+    private String repoUrl;
+    private SimpleMeterRegistry meterRegistry;
+    private MessageTypeWorktreePoolProperties poolProperties;
+    private MessageTypeWorktreePool pool;
+    private MessageTypeRepositoryReferenceCache cache;
+    private MessageTypeRepositoryFactory factory;
+
+    @BeforeEach
+    void prepare() throws Exception {
+        repo = TestRegistryRepo.createMessageTypeRegistryRepository();
+        repoUrl = repo.url();
+        meterRegistry = new SimpleMeterRegistry();
+        poolProperties = new MessageTypeWorktreePoolProperties();
+        poolProperties.setEnabled(true);
+        pool = new MessageTypeWorktreePool(poolProperties, meterRegistry);
+
+        MessageTypeRepositoryCacheProperties cacheProps = new MessageTypeRepositoryCacheProperties();
+        cacheProps.setDirectory(cacheRoot.toString());
+        MessageTypeRepositoryProperties repositoryProperties = propertiesFor(repoUrl);
+        cache = new MessageTypeRepositoryReferenceCache(
+                cacheProps, repositoryProperties, meterRegistry);
+        cache.refreshAll();
+        factory = new MessageTypeRepositoryFactory(repositoryProperties, meterRegistry, cache, pool,
+                new SchemaImportCache(new MessageTypeSchemaCacheProperties(), meterRegistry), null, null, null);
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        pool.close();
+        repo.delete();
+    }
+
+    @Test
+    void returnedWorktreeIsReusedByTheNextRepository() {
+        File firstWorktree;
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            firstWorktree = messageTypeRepository.gitRepoPath;
+            assertThat(messageTypeRepository.getSchemaAsAvroProtocolJson("master", null, "ActivZoneEnteredEvent", "1.0.0"))
+                    .contains("ZoneReference");
+        }
+        assertThat(firstWorktree).isDirectory();
+
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            assertThat(messageTypeRepository.gitRepoPath).isEqualTo(firstWorktree);
+            assertThat(messageTypeRepository.getSchemaAsAvroProtocolJson(null, repo.revision(), "ActivZoneEnteredEvent", "2.0.0"))
+                    .contains("JourneyActivationRequestReference");
+        }
+
+        assertThat(leaseCount("created")).isEqualTo(1);
+        assertThat(leaseCount("reused")).isEqualTo(1);
+        assertThat(meterRegistry.get("messagetypeworktreepool.size").tag("state", "idle").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("messagetypeworktreepool.size").tag("state", "leased").gauge().value()).isZero();
+        assertThat(meterRegistry.get("messagetypeworktreepool.reset.time").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void returnedWorktreeIsResetBeforeItIsLeasedAgain() throws Exception {
+        File worktree;
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            worktree = messageTypeRepository.gitRepoPath;
+            Files.writeString(worktree.toPath().resolve(DESCRIPTOR), "modified");
+            Files.writeString(worktree.toPath().resolve("untracked.txt"), "untracked");
+        }
+
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            assertThat(messageTypeRepository.gitRepoPath).isEqualTo(worktree);
+            assertThat(worktree.toPath().resolve("untracked.txt")).doesNotExist();
+            assertThat(Files.readString(worktree.toPath().resolve(DESCRIPTOR))).isNotEqualTo("modified");
+            assertThat(messageTypeRepository.getSchemaAsAvroProtocolJson("master", null, "ActivZoneEnteredEvent", "1.0.0"))
+                    .contains("ZoneReference");
+        }
+    }
+
+    @Test
+    void idleWorktreesAreEvictedAfterTheIdleTimeout() {
+        poolProperties.setIdleTimeoutMillis(0);
+        File worktree;
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            worktree = messageTypeRepository.gitRepoPath;
+        }
+
+        pool.evictIdle();
+
+        assertThat(worktree).doesNotExist();
+        assertThat(meterRegistry.get("messagetypeworktreepool.size").tag("state", "idle").gauge().value()).isZero();
+    }
+
+    @Test
+    void leaseFallsBackToUnpooledWorktreeWhenPoolIsExhausted() {
+        poolProperties.setMaxSizePerRepository(1);
+        File unpooledWorktree;
+        try (MessageTypeRepository pooled = factory.cloneRepository(repoUrl);
+             MessageTypeRepository unpooled = factory.cloneRepository(repoUrl)) {
+            unpooledWorktree = unpooled.gitRepoPath;
+            assertThat(unpooledWorktree).isNotEqualTo(pooled.gitRepoPath);
+            assertThat(unpooled.getSchemaAsAvroProtocolJson("master", null, "ActivZoneEnteredEvent", "1.0.0"))
+                    .contains("ZoneReference");
+        }
+        assertThat(leaseCount("timeout")).isEqualTo(1);
+        assertThat(unpooledWorktree).doesNotExist();
+    }
+
+    @Test
+    void refreshedCacheEntryIsPrewarmedUpToTheConfiguredNumberOfWorktrees() {
+        poolProperties.setMaxSizePerRepository(3);
+        poolProperties.setPrewarmedWorktreesPerRepository(2);
+        MessageTypeRepositoryCacheRefreshedEvent event =
+                new MessageTypeRepositoryCacheRefreshedEvent(repoUrl, cache.getCacheRepoDir(repoUrl).orElseThrow());
+
+        pool.onCacheRefreshed(event);
+        pool.onCacheRefreshed(event);
+
+        assertThat(meterRegistry.get("messagetypeworktreepool.size").tag("state", "idle").gauge().value()).isEqualTo(2);
+        try (MessageTypeRepository messageTypeRepository = factory.cloneRepository(repoUrl)) {
+            assertThat(messageTypeRepository.getSchemaAsAvroProtocolJson("master", null, "ActivZoneEnteredEvent", "1.0.0"))
+                    .contains("ZoneReference");
+        }
+        assertThat(leaseCount("reused")).isEqualTo(1);
+        assertThat(meterRegistry.find("messagetypeworktreepool.lease.time").tag("result", "created").timer()).isNull();
+    }
+
+    private long leaseCount(String result) {
+        return meterRegistry.get("messagetypeworktreepool.lease.time").tag("result", result).timer().count();
+    }
+
+    private static MessageTypeRepositoryProperties propertiesFor(String uri) {
+        MessageTypeRepositoryProperties props = new MessageTypeRepositoryProperties();
+        RepositoryProperties repoProps = new RepositoryProperties();
+        repoProps.setUri(uri);
+        repoProps.setType(RepositoryProperties.RepositoryType.NONE);
+        props.setRepositories(List.of(repoProps));
+        return props;
+    }
+}
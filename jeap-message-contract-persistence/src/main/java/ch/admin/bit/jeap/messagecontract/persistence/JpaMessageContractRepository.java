@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -111,5 +112,58 @@ public interface JpaMessageContractRepository extends CrudRepository<MessageCont
             @Param("environment") String environment,
             @Param("normalizedMessageType") String normalizedMessageType);
 
+    @Query("""
+            select mc from MessageContract mc
+            where mc.deleted = false
+              and mc.messageType in :messageTypes
+              and exists (
+                  select d.id from Deployment d
+                  where d.appName = mc.appName
+                    and d.appVersion = mc.appVersion
+                    and d.environment = :environment
+                    and d.createdAt = (
+                        select max(latest.createdAt) from Deployment latest
+                        where latest.appName = d.appName and latest.environment = d.environment
+                    )
+              )
+            order by mc.appName, mc.messageTypeVersion
+            """)
+    List<MessageContract> findCurrentlyDeployedByEnvironmentAndMessageTypes(
+            @Param("environment") String environment,
+            @Param("messageTypes") Collection<String> messageTypes);
+
+    /**
+     * All contracts of the versions currently deployed on {@code environment} that interact with one of the contracts
+     * of the given app version, i.e. use the same message type on the same topic in the opposite role.
+     */
+    @Query("""
+            select mc from MessageContract mc
+            where mc.deleted = false
+              and exists (
+                  select own.id from MessageContract own
+                  where own.appName = :appName
+                    and own.appVersion = :appVersion
+                    and own.deleted = false
+                    and own.messageType = mc.messageType
+                    and own.topic = mc.topic
+                    and own.role <> mc.role
+              )
+              and exists (
+                  select d.id from Deployment d
+                  where d.appName = mc.appName
+                    and d.appVersion = mc.appVersion
+                    and d.environment = :environment
+                    and d.createdAt = (
+                        select max(latest.createdAt) from Deployment latest
+                        where latest.appName = d.appName and latest.environment = d.environment
+                    )
+              )
+            order by mc.appName, mc.messageTypeVersion
+            """)
+    List<MessageContract> findCurrentlyDeployedCounterpartContracts(
+            @Param("appName") String appName,
+            @Param("appVersion") String appVersion,
+            @Param("environment") String environment);
+
     List<MessageContractInfo> findAllByDeletedFalse();
 }
@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -69,6 +70,14 @@ public class MessageContractRepository {
         return jpaRepository.findCurrentlyDeployedByEnvironmentAndMessageType(environment, normalizedMessageType);
     }
 
+    public List<MessageContract> findCurrentlyDeployedContractsForMessageTypes(String environment, Collection<String> messageTypes) {
+        return jpaRepository.findCurrentlyDeployedByEnvironmentAndMessageTypes(environment, messageTypes);
+    }
+
+    public List<MessageContract> findCurrentlyDeployedCounterpartContracts(String appName, String appVersion, String environment) {
+        return jpaRepository.findCurrentlyDeployedCounterpartContracts(appName, appVersion, environment);
+    }
+
     public List<MessageContractInfo> findAllMessageContractInfos() {
         return jpaRepository.findAllByDeletedFalse();
     }
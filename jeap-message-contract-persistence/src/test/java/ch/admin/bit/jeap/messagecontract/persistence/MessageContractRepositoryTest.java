@@ -316,6 +316,29 @@ class MessageContractRepositoryTest {
                 .isEmpty();
     }
 
+    @Test
+    void findCurrentlyDeployedCounterpartContractsReturnsOppositeRoleContractsOfLatestDeployments() {
+        MessageContract app1v1 = createContract("app1", "v1", null, MASTER, MessageContractRole.CONSUMER, null);
+        MessageContract app2v1 = createContract("app2", "v1", null, MASTER, MessageContractRole.PRODUCER, null);
+        MessageContract app2v2 = createContract("app2", "v2", null, MASTER, MessageContractRole.PRODUCER, null);
+        MessageContract sameRole = createContract("app3", "v1", null, MASTER, MessageContractRole.CONSUMER, null);
+        MessageContract otherType = createContract("app4", "v1", null, MASTER, MessageContractRole.PRODUCER,
+                null, TYPE2, null);
+        MessageContract notDeployed = createContract("app5", "v1", null, MASTER, MessageContractRole.PRODUCER, null);
+        messageContractRepository.saveContracts(List.of(app1v1, app2v1, app2v2, sameRole, otherType, notDeployed));
+        deploymentRepository.save(Deployment.builder().appName("app2").appVersion("v1").environment("PROD").build());
+        deploymentRepository.save(Deployment.builder().appName("app2").appVersion("v2").environment("PROD").build());
+        deploymentRepository.save(Deployment.builder().appName("app3").appVersion("v1").environment("PROD").build());
+        deploymentRepository.save(Deployment.builder().appName("app4").appVersion("v1").environment("PROD").build());
+
+        List<MessageContract> contracts = messageContractRepository.findCurrentlyDeployedCounterpartContracts(
+                "app1", "v1", "PROD");
+
+        assertThat(contracts).containsExactly(app2v2);
+        assertThat(messageContractRepository.findCurrentlyDeployedCounterpartContracts("app1", "v1", "REF"))
+                .isEmpty();
+    }
+
     @Test
     void existsByAppNameAndAppVersionContractDeletedContractNotReturned() {
         //given
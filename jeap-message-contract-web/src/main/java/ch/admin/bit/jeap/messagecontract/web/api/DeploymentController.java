@@ -2,9 +2,13 @@ package ch.admin.bit.jeap.messagecontract.web.api;
 
 import ch.admin.bit.jeap.messagecontract.domain.DeploymentService;
 import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckResult;
+import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckTarget;
 import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityService;
 import ch.admin.bit.jeap.messagecontract.persistence.model.Deployment;
+import ch.admin.bit.jeap.messagecontract.web.api.dto.CompatibilityCheckBatchDto;
+import ch.admin.bit.jeap.messagecontract.web.api.dto.CompatibilityCheckBatchResultDto;
 import ch.admin.bit.jeap.messagecontract.web.api.dto.DeploymentDto;
+import ch.admin.bit.jeap.messagecontract.web.api.dto.DeploymentSimulationDto;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +20,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import java.util.List;
 
@@ -84,4 +89,47 @@ public class DeploymentController {
         }
         return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(compatibilityCheckResult);
     }
+
+    @PostMapping(path = "/compatibility", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get compatibility of several planned deployments at once, checking every app version against every environment",
+            description = "Each app version is checked against the consumer/producer versions currently deployed on each " +
+                    "environment, as by the GET endpoint. Results are returned per app version and environment, in the " +
+                    "order of the request.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "All app versions are compatible with consumers/producers on all environments"),
+                    @ApiResponse(responseCode = "412", description = "At least one app version is not compatible with consumers/producers on an environment")
+            })
+    @PreAuthorize("hasAnyRole('messagecontract-read', 'messagecontract-write', 'messagecontract-contract-upload')")
+    public ResponseEntity<CompatibilityCheckBatchResultDto> getCompatibilities(@Valid @RequestBody CompatibilityCheckBatchDto batch) {
+        List<CompatibilityCheckTarget> targets = batch.toDomainObjects();
+        CompatibilityCheckBatchResultDto result = CompatibilityCheckBatchResultDto.fromDomainObjects(
+                targets, compatibilityService.checkCompatibility(targets));
+        log.info("Compatibility check result for {} app version(s) on {}: {}", batch.appVersions().size(),
+                batch.environments(), result.compatible());
+        if (result.compatible()) {
+            return ResponseEntity.ok(result);
+        }
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(result);
+    }
+
+    @PostMapping(path = "/compatibility/simulation/{environment}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Simulate deploying several app versions on an environment at the same time",
+            description = "Each planned app version is checked against the environment as it would be after the rollout, " +
+                    "i.e. against the planned versions of the other apps and the currently deployed versions of all " +
+                    "remaining apps. Results are returned per planned app version, ordered by app name.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "All planned app versions are compatible with the environment after the rollout"),
+                    @ApiResponse(responseCode = "412", description = "At least one planned app version is not compatible with the environment after the rollout")
+            })
+    @PreAuthorize("hasAnyRole('messagecontract-read', 'messagecontract-write', 'messagecontract-contract-upload')")
+    public ResponseEntity<CompatibilityCheckBatchResultDto> simulateDeployments(@NotBlank @PathVariable String environment,
+            @Valid @RequestBody DeploymentSimulationDto simulation) {
+        CompatibilityCheckBatchResultDto result = CompatibilityCheckBatchResultDto.fromDomainObjects(
+                compatibilityService.simulateDeployments(environment.toUpperCase(), simulation.appVersions()));
+        log.info("Compatibility simulation result for {} on {}: {}", simulation.appVersions(), environment, result.compatible());
+        if (result.compatible()) {
+            return ResponseEntity.ok(result);
+        }
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(result);
+    }
 }
@@ -0,0 +1,116 @@
+package ch.admin.bit.jeap.messagecontract.web.api;
+
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryReferenceCache;
+import ch.admin.bit.jeap.messagecontract.web.config.RegistryWebhookProperties;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Receives push notifications of message type registries (GitHub-style webhooks) and refreshes the corresponding
+ * reference repository cache entry in the background. Requests are authenticated by their
+ * {@value #SIGNATURE_HEADER} HMAC-SHA256 signature instead of user credentials.
+ */
+@RestController
+@RequestMapping("/api/registry-webhooks")
+@RequiredArgsConstructor
+@Slf4j
+public class RegistryWebhookController {
+
+    static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+    static final String EVENT_HEADER = "X-GitHub-Event";
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String[] REPOSITORY_URL_FIELDS = {"clone_url", "ssh_url", "git_url", "html_url", "url"};
+
+    private final RegistryWebhookProperties webhookProperties;
+    private final MessageTypeRepositoryReferenceCache referenceCache;
+    private final JsonMapper jsonMapper = new JsonMapper();
+
+    @PostMapping("/push")
+    @Operation(summary = "Notify the service of a push to a message type registry",
+            description = "Triggers an asynchronous refresh of the registry's reference repository cache entry. " +
+                    "The payload must carry the registry's URL in repository.clone_url (or ssh_url, git_url, " +
+                    "html_url, url) and be signed with the configured secret in the X-Hub-Signature-256 header.",
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Refresh triggered"),
+                    @ApiResponse(responseCode = "204", description = "Ping acknowledged"),
+                    @ApiResponse(responseCode = "400", description = "Payload is not valid JSON"),
+                    @ApiResponse(responseCode = "401", description = "Missing or invalid signature"),
+                    @ApiResponse(responseCode = "404", description = "Webhook disabled or repository not cached")
+            })
+    public ResponseEntity<Void> push(@RequestHeader(name = SIGNATURE_HEADER, required = false) String signature,
+                                     @RequestHeader(name = EVENT_HEADER, required = false) String event,
+                                     @RequestBody byte[] payload) {
+        if (!StringUtils.hasText(webhookProperties.getSecret())) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!hasValidSignature(payload, signature)) {
+            log.warn("Rejected registry push notification with missing or invalid signature");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if ("ping".equals(event)) {
+            return ResponseEntity.noContent().build();
+        }
+        Set<String> repositoryUrls;
+        try {
+            repositoryUrls = repositoryUrls(jsonMapper.readTree(payload));
+        } catch (JacksonException ex) {
+            log.warn("Rejected registry push notification with invalid payload: {}", ex.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        for (String repositoryUrl : repositoryUrls) {
+            if (referenceCache.onPushNotification(repositoryUrl)) {
+                return ResponseEntity.accepted().build();
+            }
+        }
+        log.info("Ignored registry push notification for unknown repository {}", repositoryUrls);
+        return ResponseEntity.notFound().build();
+    }
+
+    private boolean hasValidSignature(byte[] payload, String signature) {
+        if (signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(webhookProperties.getSecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            byte[] expected = mac.doFinal(payload);
+            byte[] actual = HexFormat.of().parseHex(signature.substring(SIGNATURE_PREFIX.length()));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException _) {
+            return false;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " not available", ex);
+        }
+    }
+
+    private static Set<String> repositoryUrls(JsonNode payload) {
+        JsonNode repository = payload.path("repository");
+        Set<String> urls = new LinkedHashSet<>();
+        for (String field : REPOSITORY_URL_FIELDS) {
+            JsonNode url = repository.path(field);
+            if (url.isString() && !url.asString().isBlank()) {
+                urls.add(url.asString());
+            }
+        }
+        return urls;
+    }
+}
@@ -1,6 +1,7 @@
 package ch.admin.bit.jeap.messagecontract.web.api;
 
 import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepoException;
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryBusyException;
 import ch.admin.bit.jeap.messagecontract.domain.renovate.RenovateRegistryException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -31,4 +32,10 @@ public class RestControllerExceptionHandler extends ResponseEntityExceptionHandl
     public void logRenovateRegistryFailure(RenovateRegistryException ex) {
         log.error("Renovate registry request failed: {}", ex.getMessage(), ex);
     }
+
+    @ExceptionHandler(MessageTypeRepositoryBusyException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void logMessageTypeRepositoryBusy(MessageTypeRepositoryBusyException ex) {
+        log.warn("Message type repository busy: {}", ex.getMessage());
+    }
 }
@@ -0,0 +1,8 @@
+package ch.admin.bit.jeap.messagecontract.web.api.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+public record AppVersionDto(
+        @NotBlank String appName,
+        @NotBlank String appVersion) {
+}
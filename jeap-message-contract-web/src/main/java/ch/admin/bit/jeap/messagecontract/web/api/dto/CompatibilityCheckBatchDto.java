@@ -0,0 +1,29 @@
+package ch.admin.bit.jeap.messagecontract.web.api.dto;
+
+import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckTarget;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Checks every app version against every environment. Both lists are bounded, so that a single request cannot
+ * schedule more than {@value #MAX_APP_VERSIONS} x {@value #MAX_ENVIRONMENTS} compatibility checks.
+ */
+public record CompatibilityCheckBatchDto(
+        @Valid @NotEmpty @Size(max = MAX_APP_VERSIONS) List<AppVersionDto> appVersions,
+        @NotEmpty @Size(max = MAX_ENVIRONMENTS) List<@NotBlank String> environments) {
+
+    public static final int MAX_APP_VERSIONS = 20;
+    public static final int MAX_ENVIRONMENTS = 10;
+
+    public List<CompatibilityCheckTarget> toDomainObjects() {
+        return appVersions.stream()
+                .flatMap(appVersion -> environments.stream()
+                        .map(environment -> new CompatibilityCheckTarget(
+                                appVersion.appName(), appVersion.appVersion(), environment.toUpperCase())))
+                .toList();
+    }
+}
@@ -0,0 +1,34 @@
+package ch.admin.bit.jeap.messagecontract.web.api.dto;
+
+import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckResult;
+import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheckTarget;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public record CompatibilityCheckBatchResultDto(
+        boolean compatible,
+        List<Item> results) {
+
+    public record Item(
+            String appName,
+            String appVersion,
+            String environment,
+            CompatibilityCheckResult result) {
+    }
+
+    public static CompatibilityCheckBatchResultDto fromDomainObjects(List<CompatibilityCheckTarget> targets,
+                                                                     List<CompatibilityCheckResult> results) {
+        List<Item> items = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            CompatibilityCheckTarget target = targets.get(i);
+            items.add(new Item(target.appName(), target.appVersion(), target.environment(), results.get(i)));
+        }
+        return new CompatibilityCheckBatchResultDto(results.stream().allMatch(CompatibilityCheckResult::compatible), items);
+    }
+
+    public static CompatibilityCheckBatchResultDto fromDomainObjects(Map<CompatibilityCheckTarget, CompatibilityCheckResult> results) {
+        return fromDomainObjects(List.copyOf(results.keySet()), List.copyOf(results.values()));
+    }
+}
@@ -0,0 +1,16 @@
+package ch.admin.bit.jeap.messagecontract.web.api.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.Map;
+
+/**
+ * App versions planned to be deployed on an environment at the same time, by app name. At most
+ * {@value #MAX_APP_VERSIONS} app versions are simulated per request.
+ */
+public record DeploymentSimulationDto(
+        @NotEmpty @Size(max = MAX_APP_VERSIONS) Map<@NotBlank String, @NotBlank String> appVersions) {
+
+    public static final int MAX_APP_VERSIONS = 50;
+}
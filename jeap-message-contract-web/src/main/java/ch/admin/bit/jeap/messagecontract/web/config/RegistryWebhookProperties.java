@@ -0,0 +1,22 @@
+package ch.admin.bit.jeap.messagecontract.web.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "jeap.messagecontract.registry-webhook")
+public class RegistryWebhookProperties {
+
+    /**
+     * Shared secret used to verify the {@code X-Hub-Signature-256} HMAC-SHA256 signature of push notifications sent
+     * to {@code /api/registry-webhooks/push}. The endpoint is disabled (404) when no secret is set.
+     */
+    private String secret;
+
+    @Override
+    public String toString() {
+        return "RegistryWebhookProperties(secret=" + (secret == null ? null : "***") + ")";
+    }
+}
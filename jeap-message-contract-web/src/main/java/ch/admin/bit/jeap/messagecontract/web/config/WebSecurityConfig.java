@@ -38,10 +38,15 @@ class WebSecurityConfig {
                 .httpBasic(withDefaults())
                 .authorizeHttpRequests(requests -> requests
                         .requestMatchers("/error").permitAll()
+                        // Authenticated by the payload signature, see RegistryWebhookController
+                        .requestMatchers(HttpMethod.POST, "/api/registry-webhooks/push").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/contracts").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/deployments").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/renovate/**", "/api/deployments/compatibility/**")
                         .hasAnyRole(READ_ROLE, WRITE_ROLE, UPLOAD_CONTRACT_ROLE)
+                        // Read-only batch compatibility check and deployment simulation, see DeploymentController
+                        .requestMatchers(HttpMethod.POST, "/api/deployments/compatibility", "/api/deployments/compatibility/simulation/*")
+                        .hasAnyRole(READ_ROLE, WRITE_ROLE, UPLOAD_CONTRACT_ROLE)
                         .anyRequest().hasAnyRole(WRITE_ROLE, UPLOAD_CONTRACT_ROLE));
         return http.build();
     }
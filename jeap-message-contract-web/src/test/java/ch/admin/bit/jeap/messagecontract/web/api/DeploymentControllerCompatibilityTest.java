@@ -7,8 +7,12 @@ import ch.admin.bit.jeap.messagecontract.domain.compatibility.CompatibilityCheck
 import ch.admin.bit.jeap.messagecontract.persistence.JpaDeploymentRepository;
 import ch.admin.bit.jeap.messagecontract.persistence.JpaMessageContractRepository;
 import ch.admin.bit.jeap.messagecontract.test.TestRegistryRepo;
+import ch.admin.bit.jeap.messagecontract.web.api.dto.AppVersionDto;
+import ch.admin.bit.jeap.messagecontract.web.api.dto.CompatibilityCheckBatchDto;
+import ch.admin.bit.jeap.messagecontract.web.api.dto.CompatibilityCheckBatchResultDto;
 import ch.admin.bit.jeap.messagecontract.web.api.dto.CompatibilityMode;
 import ch.admin.bit.jeap.messagecontract.web.api.dto.CreateMessageContractsDto;
+import ch.admin.bit.jeap.messagecontract.web.api.dto.DeploymentSimulationDto;
 import ch.admin.bit.jeap.messagecontract.web.api.dto.MessageContractRole;
 import ch.admin.bit.jeap.messagecontract.web.api.dto.NewMessageContractDto;
 import lombok.SneakyThrows;
@@ -25,9 +29,13 @@ import tools.jackson.databind.json.JsonMapper;
 
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -254,6 +262,119 @@ class DeploymentControllerCompatibilityTest extends ControllerTestBase {
         assertThat(producerResult.incompatibilities()).isEmpty();
     }
 
+    @Test
+    @SneakyThrows
+    void postCompatibilityShouldReturnResultPerAppVersionAndEnvironment() {
+        // given: a consumer consuming v2 deployed on prod, and a producer producing an incompatible v1
+        putActivZoneEnteredEventContract(VERSION_2_0_0, MessageContractRole.CONSUMER, TEST_CONSUMER_APP, "1.0");
+        putActivZoneEnteredEventContract("1.0.0", MessageContractRole.PRODUCER, TEST_PRODUCER_APP, "2.0");
+        notifyAppDeployedOnEnv(TEST_CONSUMER_APP, "1.0", "prod");
+        CompatibilityCheckBatchDto batch = new CompatibilityCheckBatchDto(List.of(
+                new AppVersionDto(TEST_PRODUCER_APP, "2.0"),
+                new AppVersionDto("unknown-app", "1.0")),
+                List.of("prod", "ref"));
+        String basicAuthHeader = BASIC_PREFIX + Base64.getEncoder().encodeToString(("read:secret").getBytes());
+
+        // when checking both apps on prod and ref in one call, as read-only user
+        MvcResult mvcResult = mockMvc.perform(post("/api/deployments/compatibility")
+                        .header(AUTHORIZATION, basicAuthHeader)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonMapper.writeValueAsString(batch)))
+                .andExpect(status().is(HttpStatus.PRECONDITION_FAILED.value()))
+                .andReturn();
+        CompatibilityCheckBatchResultDto result = jsonMapper.readValue(
+                mvcResult.getResponse().getContentAsString(), CompatibilityCheckBatchResultDto.class);
+
+        // then: expect one result per app version and environment, in request order, only the producer on prod failing
+        assertThat(result.compatible()).isFalse();
+        assertThat(result.results())
+                .extracting(item -> item.appName() + ":" + item.appVersion() + "@" + item.environment())
+                .containsExactly(TEST_PRODUCER_APP + ":2.0@PROD", TEST_PRODUCER_APP + ":2.0@REF",
+                        "unknown-app:1.0@PROD", "unknown-app:1.0@REF");
+        assertThat(result.results())
+                .extracting(item -> item.result().compatible())
+                .containsExactly(false, true, true, true);
+        assertThat(result.results().getFirst().result().interactions())
+                .extracting(ConsumerProducerInteraction::appName)
+                .containsExactly(TEST_CONSUMER_APP);
+    }
+
+    @Test
+    @SneakyThrows
+    void postCompatibilityWithoutEnvironmentsShouldReturnBadRequest() {
+        String basicAuthHeader = BASIC_PREFIX + Base64.getEncoder().encodeToString((WRITE_SECRET).getBytes());
+        CompatibilityCheckBatchDto batch = new CompatibilityCheckBatchDto(
+                List.of(new AppVersionDto(TEST_PRODUCER_APP, "2.0")), List.of());
+
+        mockMvc.perform(post("/api/deployments/compatibility")
+                        .header(AUTHORIZATION, basicAuthHeader)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonMapper.writeValueAsString(batch)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @SneakyThrows
+    void postCompatibilityWithTooManyAppVersionsShouldReturnBadRequest() {
+        String basicAuthHeader = BASIC_PREFIX + Base64.getEncoder().encodeToString(("read:secret").getBytes());
+        List<AppVersionDto> appVersions = IntStream.rangeClosed(0, CompatibilityCheckBatchDto.MAX_APP_VERSIONS)
+                .mapToObj(i -> new AppVersionDto(TEST_PRODUCER_APP, "1." + i))
+                .toList();
+        CompatibilityCheckBatchDto batch = new CompatibilityCheckBatchDto(appVersions, List.of("prod"));
+
+        mockMvc.perform(post("/api/deployments/compatibility")
+                        .header(AUTHORIZATION, basicAuthHeader)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonMapper.writeValueAsString(batch)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @SneakyThrows
+    void postSimulationShouldCheckPlannedVersionsAgainstEachOther() {
+        // given: a producer of v1 deployed on prod, and consumer and producer versions of v2 planned together
+        putActivZoneEnteredEventContract("1.0.0", MessageContractRole.PRODUCER, TEST_PRODUCER_APP, "1.0");
+        putActivZoneEnteredEventContract(VERSION_2_0_0, MessageContractRole.PRODUCER, TEST_PRODUCER_APP, "2.0");
+        putActivZoneEnteredEventContract(VERSION_2_0_0, MessageContractRole.CONSUMER, TEST_CONSUMER_APP, "1.0");
+        notifyAppDeployedOnEnv(TEST_PRODUCER_APP, "1.0", "prod");
+        String basicAuthHeader = BASIC_PREFIX + Base64.getEncoder().encodeToString(("read:secret").getBytes());
+
+        // when simulating the rollout of both on prod
+        MvcResult mvcResult = mockMvc.perform(post("/api/deployments/compatibility/simulation/{environment}", "prod")
+                        .header(AUTHORIZATION, basicAuthHeader)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonMapper.writeValueAsString(new DeploymentSimulationDto(
+                                Map.of(TEST_PRODUCER_APP, "2.0", TEST_CONSUMER_APP, "1.0")))))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn();
+        CompatibilityCheckBatchResultDto result = jsonMapper.readValue(
+                mvcResult.getResponse().getContentAsString(), CompatibilityCheckBatchResultDto.class);
+
+        // then: the consumer is checked against the planned producer version instead of the deployed one
+        assertThat(result.compatible()).isTrue();
+        assertThat(result.results())
+                .extracting(CompatibilityCheckBatchResultDto.Item::appName)
+                .containsExactly(TEST_CONSUMER_APP, TEST_PRODUCER_APP);
+        assertThat(result.results().getFirst().result().interactions())
+                .extracting(ConsumerProducerInteraction::appVersion)
+                .containsExactly("2.0");
+    }
+
+    @Test
+    @SneakyThrows
+    void postSimulationWithTooManyAppVersionsShouldReturnBadRequest() {
+        String basicAuthHeader = BASIC_PREFIX + Base64.getEncoder().encodeToString(("read:secret").getBytes());
+        Map<String, String> appVersions = IntStream.rangeClosed(0, DeploymentSimulationDto.MAX_APP_VERSIONS)
+                .boxed()
+                .collect(Collectors.toMap(i -> "app-" + i, _ -> "1.0"));
+
+        mockMvc.perform(post("/api/deployments/compatibility/simulation/{environment}", "prod")
+                        .header(AUTHORIZATION, basicAuthHeader)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonMapper.writeValueAsString(new DeploymentSimulationDto(appVersions))))
+                .andExpect(status().isBadRequest());
+    }
+
     @SneakyThrows
     protected void notifyAppDeployedOnEnv(String appName, String appVersion, String environment) {
         String basicAuthHeader = BASIC_PREFIX + Base64.getEncoder().encodeToString((WRITE_SECRET).getBytes());
@@ -0,0 +1,124 @@
+package ch.admin.bit.jeap.messagecontract.web.api;
+
+import ch.admin.bit.jeap.messagecontract.messagetype.repository.MessageTypeRepositoryReferenceCache;
+import ch.admin.bit.jeap.messagecontract.test.TestRegistryRepo;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RegistryWebhookControllerTest extends ControllerTestBase {
+
+    private static final String PATH = "/api/registry-webhooks/push";
+    private static final String SECRET = "webhook-secret";
+
+    @TempDir
+    static Path cacheRoot;
+
+    private static TestRegistryRepo upstream;
+
+    @Autowired
+    private MessageTypeRepositoryReferenceCache referenceCache;
+
+    @Autowired
+    RegistryWebhookControllerTest(MockMvc mockMvc) {
+        super(mockMvc);
+    }
+
+    @DynamicPropertySource
+    static void registryProperties(DynamicPropertyRegistry registry) throws IOException {
+        upstream = TestRegistryRepo.createMessageTypeRegistryRepository();
+        registry.add("messages.repositories[0].uri", upstream::url);
+        registry.add("messages.repositories[0].type", () -> "NONE");
+        registry.add("messages.repository-cache.directory", () -> cacheRoot.toString());
+        registry.add("jeap.messagecontract.registry-webhook.secret", () -> SECRET);
+    }
+
+    @AfterAll
+    static void deleteUpstream() throws IOException {
+        upstream.delete();
+    }
+
+    @Test
+    void signedPushNotificationRefreshesCacheInBackground() throws Exception {
+        referenceCache.refreshOne(upstream.url());
+        upstream.addAndCommitFile(upstream.repoDir().resolve("descriptor/activ/event/pushedevent/PushedEvent.json"),
+                "{\"messageTypeName\":\"PushedEvent\"}");
+        ObjectId upstreamHead = masterSha(upstream.repoDir().toFile());
+
+        mockMvc.perform(signed(pushPayload(upstream.url()), SECRET))
+                .andExpect(status().isAccepted());
+
+        File cacheDir = referenceCache.getCacheRepoDir(upstream.url()).orElseThrow();
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() ->
+                assertThat(masterSha(cacheDir)).isEqualTo(upstreamHead));
+    }
+
+    @Test
+    void invalidSignatureIsRejected() throws Exception {
+        mockMvc.perform(signed(pushPayload(upstream.url()), "wrong-secret"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(pushPayload(upstream.url())))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void pushForUnknownRepositoryIsNotFound() throws Exception {
+        mockMvc.perform(signed(pushPayload("https://example.invalid/unknown.git"), SECRET))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void pingIsAcknowledged() throws Exception {
+        mockMvc.perform(signed("{\"zen\":\"Keep it logically awesome.\"}", SECRET)
+                        .header(RegistryWebhookController.EVENT_HEADER, "ping"))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void invalidPayloadIsBadRequest() throws Exception {
+        mockMvc.perform(signed("not json", SECRET))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static String pushPayload(String repositoryUrl) {
+        return "{\"ref\":\"refs/heads/master\",\"repository\":{\"clone_url\":\"" + repositoryUrl + "\"}}";
+    }
+
+    private static MockHttpServletRequestBuilder signed(String payload, String secret) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String signature = "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        return post(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(RegistryWebhookController.SIGNATURE_HEADER, signature)
+                .content(payload);
+    }
+
+    private static ObjectId masterSha(File repositoryDir) throws IOException {
+        try (Git git = Git.open(repositoryDir)) {
+            return git.getRepository().resolve("refs/heads/master");
+        }
+    }
+}